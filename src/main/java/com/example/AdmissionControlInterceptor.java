@@ -0,0 +1,270 @@
+package com.example;
+
+import com.example.tictactoe.TicTacToeGrpc; //Нужны имена методов из протофайла
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+//Пропускает запросы на сервер только если у клиента не кончились токены и сервер не забит.
+//Всё отсекается до того, как запрос дойдёт до движка, статусом RESOURCE_EXHAUSTED.
+//Служебные вызовы (сброс записи JFR) пускаем только с локального адреса
+class AdmissionControlInterceptor implements ServerInterceptor {
+    static final int MAX_OPEN_STREAMS = 10_000;        //Сколько одновременно может висеть потоков JoinRoom и WatchTournament
+    static final int MAX_PEER_KEYS = 100_000;          //Адресов больше не отслеживаем, чтобы флуд не съел память
+    static final int MAX_PLAYER_KEYS = 100_000;        //То же для игроков, отдельно: токены и имена клиент присылает любые
+    static final long BUCKET_IDLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    static final Context.Key<String> PEER = Context.key("tictactoe-peer");  //Адрес клиента для сервиса: по нему движок считает открытые комнаты
+
+    private final ConcurrentMap<String, PeerLimits> peers = new ConcurrentHashMap<>();            //Адрес и его лимиты на комнаты и турниры
+    private final ConcurrentMap<String, TokenBucket> playerBuckets = new ConcurrentHashMap<>();  //Поэтому флуд выдуманными игроками не мешает новым адресам
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final BooleanSupplier roomsExhausted;   //Спрашиваем у движка, есть ли ещё место под комнаты
+
+    AdmissionControlInterceptor(BooleanSupplier roomsExhausted) {
+        this.roomsExhausted = roomsExhausted;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        String method = call.getMethodDescriptor().getFullMethodName();
+        String peer = peerOf(call);
+        long now = System.nanoTime();
+
+        if (method.equals(TicTacToeGrpc.getDumpFlightRecordingMethod().getFullMethodName()) && !isLoopback(call)) {
+            return reject(call, Status.PERMISSION_DENIED, "Доступно только с локального адреса");
+        }
+
+        PeerLimits limits = limitsOf(peer, now);   //null - адрес не отслеживаем, см. limitsOf
+        if (limits != null && !limits.requests.tryAcquire(now)) {   //Общий лимит на один адрес
+            return reject(call, "Слишком много запросов");
+        }
+        if (method.equals(TicTacToeGrpc.getCreateRoomMethod().getFullMethodName())) {  //Комнаты создавать можно реже, чем всё остальное
+            if (roomsExhausted.getAsBoolean()) {
+                return reject(call, "Достигнут лимит комнат на сервере");
+            }
+            if (limits != null && !limits.createRoom.tryAcquire(now)) {
+                return reject(call, "Слишком часто создаются комнаты");
+            }
+        }
+        if (isTournamentCall(method) && limits != null && !limits.tournament.tryAcquire(now)) {  //Каждый старт турнира заводит пачку комнат
+            return reject(call, "Слишком много запросов к турнирам");
+        }
+
+        boolean stream = method.equals(TicTacToeGrpc.getJoinRoomMethod().getFullMethodName())
+                || method.equals(TicTacToeGrpc.getWatchTournamentMethod().getFullMethodName());
+        if (stream && openStreams.incrementAndGet() > MAX_OPEN_STREAMS) {  //Поток держит память всё время игры, поэтому их тоже ограничиваем
+            openStreams.decrementAndGet();
+            return reject(call, "Сервер переполнен, попробуйте позже");
+        }
+
+        ServerCall.Listener<ReqT> delegate;
+        try {
+            delegate = Contexts.interceptCall(Context.current().withValue(PEER, peer), call, headers, next);
+        } catch (RuntimeException e) {
+            if (stream) {
+                openStreams.decrementAndGet();
+            }
+            throw e;
+        }
+
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(delegate) {
+            private boolean rejected;   //Колбэки одного вызова приходят последовательно, поэтому хватает обычного поля
+            private boolean released;
+
+            @Override
+            public void onMessage(ReqT message) {   //Имя игрока есть только в самом сообщении, так что проверяем тут, до вызова сервиса
+                String playerName = playerNameOf(message);
+                if (playerName != null && !playerName.isEmpty()
+                        && !tryAcquirePlayer(playerName, System.nanoTime())) {
+                    rejected = true;
+                    call.close(Status.RESOURCE_EXHAUSTED.withDescription("Слишком много запросов от игрока"), new Metadata());
+                    return;
+                }
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onHalfClose() {  //Именно здесь gRPC зовёт наш сервис, поэтому отклонённый запрос дальше не пускаем
+                if (!rejected) {
+                    super.onHalfClose();
+                }
+            }
+
+            @Override
+            public void onCancel() {
+                release();
+                super.onCancel();
+            }
+
+            @Override
+            public void onComplete() {
+                release();
+                super.onComplete();
+            }
+
+            private void release() {
+                if (stream && !released) {
+                    released = true;
+                    openStreams.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    void evictIdleBuckets() {  //Вызывается по таймеру: полные вёдра ничего не помнят, их можно выкинуть
+        long now = System.nanoTime();
+        peers.values().removeIf(limits -> limits.isIdleSince(now, BUCKET_IDLE_NANOS));
+        playerBuckets.values().removeIf(bucket -> bucket.isIdleSince(now, BUCKET_IDLE_NANOS));
+    }
+
+    //Лимиты адреса или null, если таблица полна, а адрес новый. Такой адрес пропускаем без личного лимита:
+    //иначе флуд с множества адресов отрезал бы всех новых клиентов. Общие лимиты на комнаты и потоки его всё равно держат
+    private PeerLimits limitsOf(String peer, long now) {
+        PeerLimits limits = peers.get(peer);
+        if (limits == null) {
+            if (peers.size() >= MAX_PEER_KEYS) {
+                return null;
+            }
+            limits = peers.computeIfAbsent(peer, k -> new PeerLimits(now));
+        }
+        return limits;
+    }
+
+    private boolean tryAcquirePlayer(String key, long now) {
+        TokenBucket bucket = playerBuckets.get(key);
+        if (bucket == null) {
+            if (playerBuckets.size() >= MAX_PLAYER_KEYS) {  //Ключ может быть выдуманным, так что не отказываем, а пропускаем: адрес уже проверен своим ведром
+                return true;
+            }
+            bucket = playerBuckets.computeIfAbsent(key, k -> new TokenBucket(Rate.PER_PLAYER, now));
+        }
+        return bucket.tryAcquire(now);
+    }
+
+    private static <ReqT, RespT> ServerCall.Listener<ReqT> reject(ServerCall<ReqT, RespT> call, String description) {
+        return reject(call, Status.RESOURCE_EXHAUSTED, description);
+    }
+
+    private static <ReqT, RespT> ServerCall.Listener<ReqT> reject(ServerCall<ReqT, RespT> call, Status status, String description) {
+        call.close(status.withDescription(description), new Metadata());
+        return new ServerCall.Listener<>() {
+        };
+    }
+
+    private static boolean isTournamentCall(String method) {
+        return method.equals(TicTacToeGrpc.getCreateTournamentMethod().getFullMethodName())
+                || method.equals(TicTacToeGrpc.getRegisterTournamentPlayerMethod().getFullMethodName())
+                || method.equals(TicTacToeGrpc.getStartTournamentMethod().getFullMethodName());
+    }
+
+    //Ключ по IP без порта, иначе каждое новое соединение будет новым клиентом.
+    //IPv6 берём по сети /64: столько адресов обычно выдают одному клиенту, и менять их он может бесплатно
+    private static String peerOf(ServerCall<?, ?> call) {
+        SocketAddress address = call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+        if (address instanceof InetSocketAddress inet && inet.getAddress() instanceof Inet6Address ipv6) {
+            return HexFormat.of().formatHex(ipv6.getAddress(), 0, 8) + "::/64";
+        }
+        if (address instanceof InetSocketAddress inet && inet.getAddress() != null) {
+            return inet.getAddress().getHostAddress();
+        }
+        return String.valueOf(address);
+    }
+
+    private static boolean isLoopback(ServerCall<?, ?> call) {
+        SocketAddress address = call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+        return address instanceof InetSocketAddress inet && inet.getAddress() != null && inet.getAddress().isLoopbackAddress();
+    }
+
+    private static String playerNameOf(Object message) {  //Ходы и выход проверяются по токену, значит и лимит по нему, имя там можно подставить любое
+        if (message instanceof com.example.tictactoe.JoinRoomRequest join) {
+            return join.getSessionToken().isEmpty() ? join.getPlayerName() : join.getSessionToken();
+        }
+        if (message instanceof com.example.tictactoe.Move move) {
+            return move.getSessionToken();
+        }
+        if (message instanceof com.example.tictactoe.LeaveRequest leave) {
+            return leave.getSessionToken();
+        }
+        if (message instanceof com.example.tictactoe.TournamentRegistration registration) {
+            return registration.getPlayerName();
+        }
+        return null;
+    }
+
+    enum Rate {  //Сколько запросов в секунду и какой запас на всплеск
+        PER_PEER(50, 100),
+        PER_PLAYER(10, 20),
+        CREATE_ROOM(1, 5),
+        TOURNAMENT(2, 10);
+
+        final long intervalNanos;
+        final long burstNanos;
+
+        Rate(int perSecond, int burst) {
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / perSecond;
+            this.burstNanos = intervalNanos * (burst - 1);
+        }
+    }
+
+    static final class PeerLimits {  //Все вёдра одного адреса под одним ключом таблицы
+        final TokenBucket requests;
+        final TokenBucket createRoom;
+        final TokenBucket tournament;
+
+        PeerLimits(long now) {
+            this.requests = new TokenBucket(Rate.PER_PEER, now);
+            this.createRoom = new TokenBucket(Rate.CREATE_ROOM, now);
+            this.tournament = new TokenBucket(Rate.TOURNAMENT, now);
+        }
+
+        boolean isIdleSince(long now, long idleNanos) {
+            return requests.isIdleSince(now, idleNanos) && createRoom.isIdleSince(now, idleNanos) && tournament.isIdleSince(now, idleNanos);
+        }
+    }
+
+    //Ведро без блокировок: храним только "теоретическое время прихода" следующего запроса (GCRA).
+    //Один CAS на запрос, никаких отдельных счётчиков токенов и таймеров пополнения
+    static final class TokenBucket {
+        private final Rate rate;
+        private final AtomicLong theoreticalArrival;
+
+        TokenBucket(Rate rate, long now) {
+            this.rate = rate;
+            this.theoreticalArrival = new AtomicLong(now);
+        }
+
+        boolean tryAcquire(long now) {
+            while (true) {
+                long current = theoreticalArrival.get();
+                long base = Math.max(current, now);
+                if (base - now > rate.burstNanos) {  //Запас на всплеск кончился
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(current, base + rate.intervalNanos)) {
+                    return true;
+                }
+            }
+        }
+
+        boolean isIdleSince(long now, long idleNanos) {
+            return now - theoreticalArrival.get() > idleNanos;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example;
+
+import com.example.engine.GameEvents;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+//Непрерывная запись JFR по кругу: на диске держим только последние минуты, при скачке задержек сбрасываем их в файл.
+//Включается флагом -Dtictactoe.jfr=true, без него запись не создаётся и события GameEvents ничего не стоят.
+//Снаружи запись можно снять и без RPC: jcmd <pid> JFR.dump name=tictactoe filename=...
+class FlightRecording {
+    static final String ENABLE_PROPERTY = "tictactoe.jfr";
+    static final String RECORDING_NAME = "tictactoe";
+    static final Duration MAX_AGE = Duration.ofMinutes(15);   //Старше этого выкидываем
+    static final long MAX_SIZE = 256L * 1024 * 1024;          //И больше этого на диске не держим
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Recording recording;   //null, если запись выключена
+    private final Path directory;
+
+    private FlightRecording(Recording recording, Path directory) {
+        this.recording = recording;
+        this.directory = directory;
+    }
+
+    static FlightRecording start(Path directory) { //Если флаг не задан или JFR недоступен, сервер работает как раньше
+        if (!Boolean.getBoolean(ENABLE_PROPERTY)) {
+            return new FlightRecording(null, directory);
+        }
+        try {
+            Recording recording = new Recording(Configuration.getConfiguration("default")); //Стандартный профиль JDK: GC, блокировки, потоки
+            recording.setName(RECORDING_NAME);
+            recording.setToDisk(true);
+            recording.setMaxAge(MAX_AGE);
+            recording.setMaxSize(MAX_SIZE);
+            GameEvents.NAMES.forEach(recording::enable);
+            recording.start();
+            System.out.println("Запись JFR включена, храним последние " + MAX_AGE.toMinutes() + " минут");
+            return new FlightRecording(recording, directory);
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            System.out.println("Не удалось включить запись JFR: " + e.getMessage());
+            return new FlightRecording(null, directory);
+        }
+    }
+
+    synchronized Path dump() throws IOException { //Копия того, что сейчас в буфере, запись при этом продолжается
+        if (recording == null) {
+            throw new IllegalStateException("Запись JFR выключена, запустите сервер с -D" + ENABLE_PROPERTY + "=true");
+        }
+        Files.createDirectories(directory);
+        Path file = directory.resolve(RECORDING_NAME + "-" + LocalDateTime.now().format(FILE_TIME) + ".jfr").toAbsolutePath();
+        recording.dump(file);
+        return file;
+    }
+
+    void close() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+}
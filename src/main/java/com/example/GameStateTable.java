@@ -0,0 +1,30 @@
+package com.example;
+
+import com.example.engine.BoardTable;
+import com.example.tictactoe.GameState; //Класс из протофайла
+
+//Заготовки GameState с уже заполненным полем для каждой достижимой позиции из BoardTable.
+//toBuilder() у заготовки не копирует поле, а переиспользует тот же список, так что поле на каждое обновление не собирается
+final class GameStateTable {
+    private static final GameState[] PROTOTYPES = new GameState[BoardTable.POSITIONS];
+
+    static {
+        for (int position = 0; position < BoardTable.POSITIONS; position++) {
+            if (BoardTable.isReachable(position)) {
+                PROTOTYPES[position] = build(position);
+            }
+        }
+    }
+
+    private GameStateTable() {
+    }
+
+    static GameState prototype(int position) {
+        GameState prototype = PROTOTYPES[position];
+        return prototype != null ? prototype : build(position);
+    }
+
+    private static GameState build(int position) {
+        return GameState.newBuilder().addAllBoard(BoardTable.board(position)).build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example;
+
+import com.example.engine.EngineSnapshot;
+import com.example.tictactoe.HandoffSnapshot; //Снимок комнат из протофайла
+import com.example.tictactoe.PlayerSnapshot;
+import com.example.tictactoe.RoomSnapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+
+//Файл, через который старый процесс передаёт незаконченные игры новому при перезапуске.
+//Движок о protobuf не знает, поэтому его снимок переводим в HandoffSnapshot и обратно здесь
+class HandoffStore {
+    private final Path path;
+
+    HandoffStore(Path path) {
+        this.path = path;
+    }
+
+    void save(EngineSnapshot snapshot) throws IOException {  //Пишем во временный файл и переименовываем, чтобы новый процесс не прочитал половину
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            toProto(snapshot).writeTo(out);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    Optional<EngineSnapshot> load() throws IOException {  //Файл не трогаем, удалит delete, когда игры восстановлены
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        HandoffSnapshot snapshot;
+        try (InputStream in = Files.newInputStream(path)) {
+            snapshot = HandoffSnapshot.parseFrom(in);
+        }
+        return Optional.of(fromProto(snapshot));
+    }
+
+    void delete() throws IOException {  //После удаления игры принадлежат этому процессу
+        Files.deleteIfExists(path);
+    }
+
+    private static HandoffSnapshot toProto(EngineSnapshot snapshot) {
+        HandoffSnapshot.Builder builder = HandoffSnapshot.newBuilder().setRoomCounter(snapshot.roomCounter());
+        snapshot.rooms().forEach(room -> {
+            RoomSnapshot.Builder roomBuilder = RoomSnapshot.newBuilder()
+                    .setRoomId(room.roomId())
+                    .setRoomName(room.roomName())
+                    .setStatus(room.status())
+                    .addAllBoard(room.board())
+                    .setCurrentPlayer(room.currentPlayer())
+                    .setGameStatus(room.gameStatus())
+                    .addAllAllowedPlayers(room.allowedPlayers());
+            room.players().forEach(p -> roomBuilder.addPlayers(PlayerSnapshot.newBuilder()
+                    .setPlayerName(p.playerName())
+                    .setSymbol(p.symbol())
+                    .setSessionToken(p.sessionToken())
+                    .build()));
+            builder.addRooms(roomBuilder.build());
+        });
+        return builder.build();
+    }
+
+    private static EngineSnapshot fromProto(HandoffSnapshot snapshot) {
+        List<EngineSnapshot.SavedRoom> rooms = snapshot.getRoomsList().stream()
+                .map(room -> new EngineSnapshot.SavedRoom(
+                        room.getRoomId(),
+                        room.getRoomName(),
+                        room.getStatus(),
+                        List.copyOf(room.getBoardList()),
+                        room.getCurrentPlayer(),
+                        room.getGameStatus(),
+                        room.getPlayersList().stream()
+                                .map(p -> new EngineSnapshot.SavedPlayer(p.getPlayerName(), p.getSymbol(), p.getSessionToken()))
+                                .toList(),
+                        List.copyOf(room.getAllowedPlayersList())))
+                .toList();
+        return new EngineSnapshot(snapshot.getRoomCounter(), rooms);
+    }
+
+    Path getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,285 @@
+package com.example;
+
+import com.example.engine.EngineEvent;
+import com.example.engine.EventHandler;
+import com.example.tictactoe.PlayerRating; //Классы из протофайла
+import com.example.tictactoe.RatingSnapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+//Рейтинг Эло и таблица лидеров.
+//Все изменения делает один поток-писатель. Результаты приходят из шины событий движка пачками, и каждая пачка - одна задача писателю.
+//Читатели (GetLeaderboard, GetRank) ничего не блокируют: место считаем по гистограмме рейтингов, верх таблицы берём из отсортированного списка
+class RatingService {
+    static final int INITIAL_RATING = 1200;
+    static final int MAX_RATING = 4000;          //Рейтинг держим в [0, MAX_RATING), под это заведена гистограмма
+    static final int K_FACTOR = 32;
+    static final int DEFAULT_LEADERBOARD_SIZE = 10;
+    static final int MAX_LEADERBOARD_SIZE = 100;
+
+    private final Path file;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "tictactoe-ratings");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();   //Имя -> номер игрока, дальше всё по номеру
+    private final ConcurrentSkipListSet<Long> ranking = new ConcurrentSkipListSet<>(); //Ключ: (MAX_RATING - рейтинг, номер), первым идёт лучший
+    private final RatingHistogram histogram = new RatingHistogram(MAX_RATING);
+
+    //Массивы пишет только поток-писатель. Нового игрока публикует запись volatile size, читатель сначала читает size.
+    //Рейтинг и число игр меняются и после регистрации, поэтому их ячейки атомарные: каждая запись сразу видна читателям
+    private volatile String[] names = new String[1024];
+    private volatile AtomicIntegerArray ratings = new AtomicIntegerArray(1024);
+    private volatile AtomicIntegerArray gamesPlayed = new AtomicIntegerArray(1024);
+    private volatile int size;
+    private boolean dirty;           //Есть несохранённые изменения, трогает только писатель
+
+    RatingService(Path file) throws IOException {
+        this.file = file;
+        load();
+        writer.scheduleWithFixedDelay(this::saveIfDirty, 30, 30, TimeUnit.SECONDS);
+    }
+
+    EventHandler resultHandler() { //Обработчик на один шард шины, зовётся из одного потока
+        return new ResultBatch();
+    }
+
+    List<PlayerRating> getLeaderboard(int limit) {
+        int count = limit <= 0 ? DEFAULT_LEADERBOARD_SIZE : Math.min(limit, MAX_LEADERBOARD_SIZE);
+        int published = size;
+        String[] currentNames = names;
+        AtomicIntegerArray currentGames = gamesPlayed;
+        List<PlayerRating> result = new ArrayList<>(count);
+        Set<Integer> emitted = new HashSet<>();
+        Iterator<Long> it = ranking.iterator();
+        while (it.hasNext() && result.size() < count) {
+            long key = it.next();
+            int id = (int) key;
+            if (id >= published) {   //Игрок появился после того, как мы прочитали size, его покажем в следующий раз
+                continue;
+            }
+            if (!emitted.add(id)) {  //Писатель переносит ключ игрока при смене рейтинга, обход может встретить его и на старом, и на новом месте
+                continue;
+            }
+            int rating = MAX_RATING - (int) (key >>> 32);
+            result.add(PlayerRating.newBuilder()
+                    .setPlayerName(currentNames[id])
+                    .setRating(rating)
+                    .setRank(1 + histogram.countAbove(rating))
+                    .setGamesPlayed(currentGames.get(id))
+                    .build());
+        }
+        return result;
+    }
+
+    PlayerRating getRank(String playerName) { //null, если игрок ещё не сыграл ни одной партии
+        Integer id = ids.get(playerName);
+        if (id == null) {
+            return null;
+        }
+        if (id >= size) {   //volatile size читаем до массивов, см. комментарий у полей
+            return null;
+        }
+        int rating = ratings.get(id);
+        return PlayerRating.newBuilder()
+                .setPlayerName(playerName)
+                .setRating(rating)
+                .setRank(1 + histogram.countAbove(rating))
+                .setGamesPlayed(gamesPlayed.get(id))
+                .build();
+    }
+
+    void close() { //Дописываем очередь, сохраняем и останавливаем писателя
+        writer.execute(this::saveIfDirty);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.out.println("Не успели сохранить рейтинг");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void applyResults(List<GameResult> batch) {
+        batch.forEach(r -> applyResult(r.xPlayer(), r.oPlayer(), r.result()));
+    }
+
+    private void applyResult(String xPlayer, String oPlayer, String result) {
+        int x = idOf(xPlayer);
+        int o = idOf(oPlayer);
+        double scoreX = switch (result) {
+            case "X_WON" -> 1.0;
+            case "O_WON" -> 0.0;
+            default -> 0.5;
+        };
+        int ratingX = ratings.get(x);
+        int ratingO = ratings.get(o);
+        double expectedX = 1.0 / (1.0 + Math.pow(10, (ratingO - ratingX) / 400.0));
+        int delta = (int) Math.round(K_FACTOR * (scoreX - expectedX)); //Сколько получил X, столько же потерял O
+        setRating(x, ratingX + delta);
+        setRating(o, ratingO - delta);
+        gamesPlayed.incrementAndGet(x);
+        gamesPlayed.incrementAndGet(o);
+        dirty = true;
+    }
+
+    private int idOf(String playerName) { //Новый игрок получает следующий номер и начальный рейтинг
+        Integer existing = ids.get(playerName);
+        if (existing != null) {
+            return existing;
+        }
+        return register(playerName, INITIAL_RATING, 0);
+    }
+
+    private int register(String playerName, int rating, int games) {
+        int id = size;
+        if (id == names.length) { //Растим массивы в два раза, старые читатели дочитают свои копии
+            int capacity = names.length * 2;
+            names = Arrays.copyOf(names, capacity);
+            ratings = grow(ratings, capacity);
+            gamesPlayed = grow(gamesPlayed, capacity);
+        }
+        int clamped = clamp(rating);
+        names[id] = playerName;
+        ratings.set(id, clamped);
+        gamesPlayed.set(id, games);
+        size = id + 1;
+        histogram.add(clamped, 1);
+        ranking.add(key(clamped, id));
+        ids.put(playerName, id);
+        return id;
+    }
+
+    private void setRating(int id, int rating) {
+        int previous = ratings.get(id);
+        int clamped = clamp(rating);
+        if (previous == clamped) {
+            return;
+        }
+        ranking.remove(key(previous, id));
+        histogram.add(previous, -1);
+        ratings.set(id, clamped);
+        histogram.add(clamped, 1);
+        ranking.add(key(clamped, id));
+    }
+
+    private static AtomicIntegerArray grow(AtomicIntegerArray array, int capacity) {
+        AtomicIntegerArray grown = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < array.length(); i++) {
+            grown.set(i, array.get(i));
+        }
+        return grown;
+    }
+
+    private static long key(int rating, int id) {
+        return ((long) (MAX_RATING - rating) << 32) | id;
+    }
+
+    private static int clamp(int rating) {
+        return Math.max(0, Math.min(MAX_RATING - 1, rating));
+    }
+
+    private void load() throws IOException { //Поднимаем рейтинг с диска, если он там есть
+        if (!Files.exists(file)) {
+            return;
+        }
+        RatingSnapshot snapshot;
+        try (InputStream in = Files.newInputStream(file)) {
+            snapshot = RatingSnapshot.parseFrom(in);
+        }
+        snapshot.getPlayersList().forEach(p -> register(p.getPlayerName(), p.getRating(), p.getGamesPlayed()));
+    }
+
+    private void saveIfDirty() { //Пишем во временный файл и переименовываем, чтобы не оставить на диске половину
+        if (!dirty) {
+            return;
+        }
+        RatingSnapshot.Builder snapshot = RatingSnapshot.newBuilder();
+        for (int id = 0; id < size; id++) {
+            snapshot.addPlayers(PlayerRating.newBuilder()
+                    .setPlayerName(names[id])
+                    .setRating(ratings.get(id))
+                    .setGamesPlayed(gamesPlayed.get(id))
+                    .build());
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                snapshot.build().writeTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            System.out.println("Не удалось сохранить рейтинг в " + file + ": " + e.getMessage());
+        }
+    }
+
+    private record GameResult(String xPlayer, String oPlayer, String result) {
+    }
+
+    //Копит законченные игры из пачки шины и отдаёт их писателю одной задачей на конце пачки
+    private final class ResultBatch implements EventHandler {
+        private final List<GameResult> pending = new ArrayList<>();
+
+        @Override
+        public void onEvent(EngineEvent event, long sequence, boolean endOfBatch) {
+            if (event.getType() == EngineEvent.Type.GAME_FINISHED) {
+                pending.add(new GameResult(event.getXPlayer(), event.getOPlayer(), event.getStatus()));
+            }
+            if (endOfBatch && !pending.isEmpty()) {
+                List<GameResult> batch = List.copyOf(pending);
+                pending.clear();
+                writer.execute(() -> applyResults(batch));
+            }
+        }
+    }
+
+    //Дерево Фенвика по значениям рейтинга: сколько игроков выше данного рейтинга за O(log MAX_RATING).
+    //Ячейки атомарные, чтобы читатели не видели мусор, пока писатель переносит игрока
+    static final class RatingHistogram {
+        private final AtomicIntegerArray tree;
+
+        RatingHistogram(int maxValue) {
+            this.tree = new AtomicIntegerArray(maxValue + 1);
+        }
+
+        void add(int value, int delta) {
+            for (int i = value + 1; i < tree.length(); i += i & -i) {
+                tree.addAndGet(i, delta);
+            }
+        }
+
+        int countAtMost(int value) {
+            int count = 0;
+            for (int i = value + 1; i > 0; i -= i & -i) {
+                count += tree.get(i);
+            }
+            return count;
+        }
+
+        int countAbove(int value) {
+            return countAtMost(tree.length() - 2) - countAtMost(value);
+        }
+    }
+}
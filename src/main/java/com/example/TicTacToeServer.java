@@ -1,40 +1,103 @@
 package com.example;
 
+import com.example.engine.EngineSnapshot; //Сам движок, сервер только переводит его в gRPC
+import com.example.engine.EventBus;
+import com.example.engine.GameEngine;
+import com.example.engine.GameEngineException;
+import com.example.engine.GameSnapshot;
+import com.example.engine.PlayerListener;
+import com.example.engine.WaitStrategy;
 import com.example.tictactoe.RoomList; //Классы из протофайла
 import com.example.tictactoe.TicTacToeGrpc;
 import io.grpc.Server; //Стартует сервер и все взаимодействия реализует
 import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
 import java.io.IOException; //Для отладки
-import java.util.*; //По мелочам (мне IDE сказала это добавить)
+import java.nio.file.Path;
+import java.util.Optional;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class TicTacToeServer {
+    static final Path HANDOFF_FILE = Path.of("tictactoe-handoff.bin");  //Сюда сохраняем игры при перезапуске и отсюда же их поднимаем
+    static final Path RATINGS_FILE = Path.of("tictactoe-ratings.bin");  //Рейтинг игроков
+    static final Path RECORDINGS_DIR = Path.of("recordings");  //Сюда сбрасываем запись JFR по запросу
+    static final WaitStrategy EVENTS_WAIT = WaitStrategy.valueOf(System.getProperty("tictactoe.events.wait", "BLOCKING").toUpperCase()); //Как подписчики шины ждут события
+    static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("tictactoe.drain.seconds", 120));   //Столько ждём, пока доиграют. Оркестратор должен давать процессу больше времени на остановку
+
     private final int port;
     private final Server server;
-    private final RoomManager roomManager = new RoomManager(); //отвечает за список комнат
-
-    public TicTacToeServer(int port) {
+    private final HandoffStore handoffStore = new HandoffStore(HANDOFF_FILE);
+    private final RatingService ratingService;  //Считает рейтинг по результатам игр
+    private final FlightRecording flightRecording = FlightRecording.start(RECORDINGS_DIR); //Пишет события по кругу, если включено флагом
+    private final GameEngine engine = new GameEngine(GameEngine.MAX_ROOMS,
+            new EventBus(EventBus.DEFAULT_SHARDS, EventBus.DEFAULT_CAPACITY, EVENTS_WAIT)); //Комнаты, ходы и сессии игроков
+    private final TournamentManager tournamentManager = new TournamentManager(engine); //Сам создаёт комнаты под матчи турниров
+    private final AdmissionControlInterceptor admissionControl; //Режет флуд до движка
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "tictactoe-maintenance");   //Фоновая уборка: пустые комнаты и старые вёдра лимитов
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TicTacToeServer(int port) throws IOException {
         this.port = port;                                                //Иницилизируем сервер
+        this.ratingService = new RatingService(RATINGS_FILE);
+        engine.subscribe("ratings", ratingService::resultHandler);  //Результаты игр разбираются вне хода, пачками
+        engine.subscribe("tournaments", () -> tournamentManager::onEvent);
+        this.admissionControl = new AdmissionControlInterceptor(engine::isFull);
         this.server = ServerBuilder.forPort(port)
-                .addService(new TicTacToeService(roomManager))
+                .addService(ServerInterceptors.intercept(new TicTacToeService(engine, ratingService, tournamentManager, flightRecording), admissionControl))
                 .build();
     }
 
     public void start() throws IOException {
+        Optional<EngineSnapshot> handoff = handoffStore.load();  //Если прошлый процесс оставил игры, поднимаем их до того, как пустим клиентов
+        if (handoff.isPresent()) {
+            engine.restore(handoff.get());
+            handoffStore.delete();  //Только после восстановления: если упадём раньше, следующий запуск прочитает файл снова
+            System.out.println("Восстановлено комнат после перезапуска: " + handoff.get().rooms().size());
+        }
         server.start(); //Стартуем и отключаем
+        maintenance.scheduleWithFixedDelay(engine::removeStaleRooms, 30, 30, TimeUnit.SECONDS);
+        maintenance.scheduleWithFixedDelay(admissionControl::evictIdleBuckets, 1, 1, TimeUnit.MINUTES);
+        maintenance.scheduleWithFixedDelay(engine::expireDetachedSessions, 10, 10, TimeUnit.SECONDS);
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
-                server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
+                drainAndStop();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         }));
     }
 
+    private void drainAndStop() throws InterruptedException { //Новых игр не начинаем, даём доиграть, остальное отдаём следующему процессу
+        engine.beginDrain();
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while (engine.countActiveGames() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(200);
+        }
+        maintenance.shutdownNow();
+        tournamentManager.shutdown();
+
+        EngineSnapshot snapshot = engine.freezeAndSnapshot(); //После этого ходы не принимаются, иначе их потеряем
+        if (!snapshot.rooms().isEmpty()) {
+            try {
+                handoffStore.save(snapshot);
+                System.out.println("Передано комнат следующему процессу: " + snapshot.rooms().size());
+            } catch (IOException e) {
+                System.out.println("Не удалось сохранить игры в " + handoffStore.getPath() + ": " + e.getMessage());
+            }
+        }
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS); //Рвём потоки, клиенты переподключатся к новому процессу по токену
+        engine.close();    //Дочитываем шину, чтобы последние результаты попали в рейтинг до сохранения
+        ratingService.close();
+        flightRecording.close();
+    }
+
     public void blockUntilShutdown() throws InterruptedException {
         if (server != null) {
             server.awaitTermination(); //Защищает от дропа
@@ -47,17 +110,35 @@ public class TicTacToeServer {
         server.blockUntilShutdown();
     }
 
+    //Обёртка над движком: переводит запросы gRPC в вызовы GameEngine, а снимки состояния - в GameState
     static class TicTacToeService extends TicTacToeGrpc.TicTacToeImplBase {
-        private final RoomManager roomManager;
+        private final GameEngine engine;
+        private final RatingService ratingService;
+        private final TournamentManager tournamentManager;
+        private final FlightRecording flightRecording;
 
-        public TicTacToeService(RoomManager roomManager) { //Инициализируем манагера
-            this.roomManager = roomManager;
+        public TicTacToeService(GameEngine engine, RatingService ratingService, TournamentManager tournamentManager, FlightRecording flightRecording) { //Инициализируем манагера
+            this.engine = engine;
+            this.ratingService = ratingService;
+            this.tournamentManager = tournamentManager;
+            this.flightRecording = flightRecording;
         }
 
         @Override //Когда к нам пришлёт клиент запрос на создание комнаты, то добавляем её.
         public void createRoom(com.example.tictactoe.CreateRoomRequest request, StreamObserver<com.example.tictactoe.RoomResponse> responseObserver) {
             try {
-                com.example.tictactoe.RoomResponse response = roomManager.createRoom(request.getRoomName());
+                com.example.tictactoe.RoomResponse response;
+                try {
+                    response = com.example.tictactoe.RoomResponse.newBuilder()
+                            .setSuccess(true)
+                            .setRoomId(engine.createRoom(request.getRoomName(), AdmissionControlInterceptor.PEER.get()))  //Открытых комнат с одного адреса не больше GameEngine.MAX_ROOMS_PER_OWNER
+                            .build();
+                } catch (GameEngineException e) {  //Лимит или остановка сервера - это ответ, а не ошибка вызова
+                    response = com.example.tictactoe.RoomResponse.newBuilder()
+                            .setSuccess(false)
+                            .setMessage(e.getMessage())
+                            .build();
+                }
                 responseObserver.onNext(response);
                 responseObserver.onCompleted();
             } catch (Exception e) {
@@ -67,34 +148,49 @@ public class TicTacToeServer {
 
         @Override  //Возвращаем список комнат
         public void listRooms(com.example.tictactoe.Empty request, StreamObserver<com.example.tictactoe.RoomList> responseObserver) {
-            responseObserver.onNext(roomManager.getRoomList());
+            RoomList.Builder builder = com.example.tictactoe.RoomList.newBuilder();  //Все игры, что не пустые и не полные, кидаем в список клиенту
+            engine.listOpenRooms().forEach(room -> builder.addRooms(com.example.tictactoe.RoomInfo.newBuilder()
+                    .setRoomId(room.roomId())
+                    .setRoomName(room.roomName())
+                    .setPlayersCount(room.playersCount())
+                    .setStatus(room.status())
+                    .build()));
+            responseObserver.onNext(builder.build());
             responseObserver.onCompleted();
         }
 
         @Override //Манагер добовляет в комнату нового игрока, тригерится клиентом
         public void joinRoom(com.example.tictactoe.JoinRoomRequest request, StreamObserver<com.example.tictactoe.GameState> responseObserver) {
+            GameStateStream stream = new GameStateStream(responseObserver);
+            if (responseObserver instanceof ServerCallStreamObserver<com.example.tictactoe.GameState> serverObserver) {  //Если клиент отвалился, место не отдаём, а ждём переподключения
+                serverObserver.setOnCancelHandler(() -> stream.cancel(engine));
+            }
             try {
-                roomManager.joinRoom(
-                        request.getRoomId(),
-                        request.getPlayerName(),
-                        responseObserver);
+                String token = request.getSessionToken();
+                if (token.isEmpty()) {
+                    token = engine.joinRoom(request.getRoomId(), request.getPlayerName(), stream);
+                } else {  //С токеном это переподключение на своё место
+                    engine.reconnect(token, stream);
+                }
+                stream.attach(engine, token);
+            } catch (GameEngineException e) {
+                stream.fail(toStatus(e));
             } catch (Exception e) {
-                responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).asRuntimeException());
+                stream.fail(Status.INTERNAL.withDescription(e.getMessage()));
             }
         }
 
         @Override  //Фиксируем ход игрока у себя и запоминаем
         public void makeMove(com.example.tictactoe.Move request, StreamObserver<com.example.tictactoe.MoveResult> responseObserver) {
             try {
-                boolean success = roomManager.handleMove(
-                        request.getGameId(),
-                        request.getPlayerName(),
-                        request.getPosition());
+                boolean success = engine.move(request.getSessionToken(), request.getPosition());  //Ходить можно только со своим токеном
                 responseObserver.onNext(com.example.tictactoe.MoveResult.newBuilder()
                         .setSuccess(success)
                         .setMessage(success ? "Ход принят" : "Некорректный ход")
                         .build());
                 responseObserver.onCompleted();
+            } catch (GameEngineException e) {
+                responseObserver.onError(toStatus(e).asRuntimeException());
             } catch (Exception e) {
                 responseObserver.onError(Status.INTERNAL.withDescription(e.getMessage()).asRuntimeException());
             }
@@ -102,296 +198,149 @@ public class TicTacToeServer {
 
         @Override //Удаляем игрока из комнаты, если клиент тригернёт выход
         public void leaveRoom(com.example.tictactoe.LeaveRequest request, StreamObserver<com.example.tictactoe.Empty> responseObserver) {
-            roomManager.handlePlayerExit(request.getRoomId(), request.getPlayerName());
+            try {
+                engine.leave(request.getSessionToken());
+            } catch (GameEngineException e) {
+                responseObserver.onError(toStatus(e).asRuntimeException());
+                return;
+            }
             responseObserver.onNext(com.example.tictactoe.Empty.getDefaultInstance());
             responseObserver.onCompleted();
         }
-    }
 
-    static class RoomManager { //Манагер (смешное слово, Manager)
-        private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
-        private final AtomicInteger roomCounter = new AtomicInteger();
-
-        public com.example.tictactoe.RoomResponse createRoom(String roomName) {
-            String roomId = "room-" + roomCounter.incrementAndGet(); // уже тригерится здесь, ставим новую комнату в мапу
-            rooms.put(roomId, new Room(roomId, roomName));
-            return com.example.tictactoe.RoomResponse.newBuilder()
-                    .setSuccess(true)
-                    .setRoomId(roomId)
-                    .build();
-        }
-
-        public com.example.tictactoe.RoomList getRoomList() {  //Все игры, что не пустые и полные мы кидаем в список клиенту
-            RoomList.Builder builder = com.example.tictactoe.RoomList.newBuilder();
-            rooms.forEach((id, room) -> {
-                if (room.getStatus().equals("WAITING") && room.getPlayersCount() == 1) {
-                    builder.addRooms(com.example.tictactoe.RoomInfo.newBuilder()
-                            .setRoomId(id)
-                            .setRoomName(room.getRoomName())
-                            .setPlayersCount(room.getPlayersCount())
-                            .setStatus(room.getStatus())
-                            .build());
-                }
-            });
-            return builder.build();
+        @Override //Верх таблицы рейтинга
+        public void getLeaderboard(com.example.tictactoe.LeaderboardRequest request, StreamObserver<com.example.tictactoe.Leaderboard> responseObserver) {
+            responseObserver.onNext(com.example.tictactoe.Leaderboard.newBuilder()
+                    .addAllPlayers(ratingService.getLeaderboard(request.getLimit()))
+                    .build());
+            responseObserver.onCompleted();
         }
 
-        public void joinRoom(String roomId, String playerName, StreamObserver<com.example.tictactoe.GameState> observer) {//Если комната не удалена, закидываем в неё игрока
-            Room room = rooms.get(roomId);
-            if (room == null) {
-                observer.onError(Status.NOT_FOUND.withDescription("Комната не найдена").asRuntimeException());
+        @Override //Рейтинг и место одного игрока
+        public void getRank(com.example.tictactoe.RankRequest request, StreamObserver<com.example.tictactoe.PlayerRating> responseObserver) {
+            com.example.tictactoe.PlayerRating rating = ratingService.getRank(request.getPlayerName());
+            if (rating == null) {
+                responseObserver.onError(Status.NOT_FOUND.withDescription("Игрок ещё не сыграл ни одной партии").asRuntimeException());
                 return;
             }
-            room.addPlayer(playerName, observer);
-        }
-
-        public boolean handleMove(String gameId, String playerName, int position) { //От метода клинта
-            Room room = rooms.get(gameId);
-            return room != null && room.makeMove(playerName, position); //Ставим в  поле значение символа и возвращаем тру, если успешно
-        }
-
-        public void handlePlayerExit(String roomId, String playerName) {  //Продолжение метода клиента
-            Room room = rooms.get(roomId);
-            if (room != null) {
-                room.removePlayer(playerName);   //Если комната есть удаляем игрока, если игроков нет или игра закончилась, удаляем
-                if (room.shouldBeRemoved()) {
-                    rooms.remove(roomId);
-                }
-            }
-        }
-    }
-
-    static class Room {
-        private final String roomId;
-        private final String roomName;
-        private final List<Player> players = new CopyOnWriteArrayList<>();  //Игроки комнаты
-        private Game game;                      //Ситуация в игре
-        private String status = "WAITING";     //Состояние игры
-
-        public Room(String roomId, String roomName) { //Инициализатор
-            this.roomId = roomId;
-            this.roomName = roomName;
+            responseObserver.onNext(rating);
+            responseObserver.onCompleted();
         }
 
-        public synchronized void addPlayer(String name, StreamObserver<com.example.tictactoe.GameState> observer) {
-            String symbol;
-            if (players.isEmpty()) //Если игрок только зашёл, то он всегда X
-            {
-                symbol = "X";
-            } else {                                                //Если игрок второй, то нужно дать ему символ противоположный игроку в комнате
-                System.out.println(players.getFirst().symbol);
-                symbol = Objects.equals(players.getFirst().symbol, "O") ? "X" : "O";
-            }
-            Player newPlayer = new Player(name, symbol, observer);
-            players.add(newPlayer); //Добавляем и грока и отправляем клиенту инфу о состоянии комнаты
-
-            com.example.tictactoe.GameState initialState = com.example.tictactoe.GameState.newBuilder()
-                    .setGameId(roomId)
-                    .setStatus(getStatusMessage())
-                    .setPlayersCount(players.size())
-                    .setPlayerSymbol(symbol)
-                    .addAllBoard(getCurrentBoard())
-                    .build();
-            observer.onNext(initialState);
-
-            if (players.size() == 2) { //Если комната полна, начинаем игру
-                startGame();
-            }
+        @Override //Новый турнир, игроков добавляем отдельно
+        public void createTournament(com.example.tictactoe.CreateTournamentRequest request, StreamObserver<com.example.tictactoe.TournamentResponse> responseObserver) {
+            responseObserver.onNext(tournamentManager.create(request.getTournamentName(), request.getFormat(), request.getRounds()));
+            responseObserver.onCompleted();
         }
 
-        private List<String> getCurrentBoard() { //Проверяем поле
-            return game != null ? Arrays.asList(game.getBoard()) : Collections.nCopies(9, "");
+        @Override
+        public void registerTournamentPlayer(com.example.tictactoe.TournamentRegistration request, StreamObserver<com.example.tictactoe.TournamentResponse> responseObserver) {
+            responseObserver.onNext(tournamentManager.register(request.getTournamentId(), request.getPlayerName()));
+            responseObserver.onCompleted();
         }
 
-        private String getStatusMessage() { //В зависимости от статуса могут потребоваться разные сообщения для клиентов
-            return switch (status) {
-                case "WAITING" -> "Ожидание игроков (" + players.size() + "/2)";
-                case "IN_PROGRESS" -> "Сейчас ходит: " + game.getCurrentPlayer();
-                case "X_WON" -> "Победил X!";
-                case "O_WON" -> "Победил O!";
-                case "DRAW" -> "Ничья!";
-                case "ABANDONED" -> "Соперник покинул игру";
-                default -> "Неизвестный статус";
-            };
+        @Override //Закрываем регистрацию и создаём комнаты первого раунда
+        public void startTournament(com.example.tictactoe.TournamentRequest request, StreamObserver<com.example.tictactoe.TournamentResponse> responseObserver) {
+            responseObserver.onNext(tournamentManager.start(request.getTournamentId()));
+            responseObserver.onCompleted();
         }
 
-        private void startGame() {  //Запускает новую игру и обновляет у клиентов
-            this.game = new Game(roomId);
-            this.status = "IN_PROGRESS";
-            notifyPlayers();
+        @Override //Поток с сеткой: пары раунда, результаты матчей, итоги
+        public void watchTournament(com.example.tictactoe.TournamentRequest request, StreamObserver<com.example.tictactoe.TournamentUpdate> responseObserver) {
+            tournamentManager.watch(request.getTournamentId(), responseObserver);
         }
 
-        public boolean makeMove(String playerName, int position) { //Фиксирует ход у себя
-            String symbol = getPlayerSymbol(playerName);
-            boolean success = symbol != null && game != null && game.makeMove(symbol, position);
-            if (success) {
-                notifyPlayers();  //Если ход успешен, тообновляем пользователей и проверяем, что игра всё ещё идёт
-                if (!game.getStatus().equals("IN_PROGRESS")) {
-                    status = game.getStatus();
-                    notifyPlayers();
-                }
+        @Override //Сбрасываем буфер JFR в файл на сервере. Интерсептор пускает сюда только с локального адреса
+        public void dumpFlightRecording(com.example.tictactoe.Empty request, StreamObserver<com.example.tictactoe.RecordingDump> responseObserver) {
+            com.example.tictactoe.RecordingDump.Builder response = com.example.tictactoe.RecordingDump.newBuilder();
+            try {
+                Path file = flightRecording.dump();
+                response.setSuccess(true).setPath(file.toString());
+            } catch (IOException | IllegalStateException e) {
+                response.setSuccess(false).setMessage(e.getMessage());
             }
-            return success;
-        }
-
-        private String getPlayerSymbol(String playerName) {      //Узнать символ игрока
-            return players.stream()
-                    .filter(p -> p.name.equals(playerName))
-                    .findFirst()
-                    .map(p -> p.symbol)
-                    .orElse(null);
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
         }
 
-        private void notifyPlayers() {         //отправляем игрокам инфу о ситуации на поле и статус игры
-            String statusMessage = getStatusMessage();
-            List<String> board = getCurrentBoard();
-
-            players.forEach(p -> {
-                com.example.tictactoe.GameState state = com.example.tictactoe.GameState.newBuilder()
-                        .setGameId(roomId)
-                        .addAllBoard(board)
-                        .setCurrentPlayer(game != null ? game.getCurrentPlayer() : "")
-                        .setStatus(statusMessage)
-                        .setPlayersCount(players.size())
-                        .setPlayerSymbol(p.symbol)
-                        .build();
-                p.observer.onNext(state);
-            });
+        private static Status toStatus(GameEngineException e) { //Причина отказа движка -> статус, который ждёт клиент
+            Status status = switch (e.getReason()) {
+                case ROOM_NOT_FOUND -> Status.NOT_FOUND;
+                case ROOM_FULL -> Status.FAILED_PRECONDITION;
+                case ROOM_LIMIT -> Status.RESOURCE_EXHAUSTED;
+                case NOT_ALLOWED -> Status.PERMISSION_DENIED;
+                case INVALID_NAME -> Status.INVALID_ARGUMENT;
+                case NAME_TAKEN -> Status.ALREADY_EXISTS;
+                case SESSION_NOT_FOUND -> Status.UNAUTHENTICATED;
+                case DRAINING -> Status.UNAVAILABLE;
+            };
+            return status.withDescription(e.getMessage());
         }
+    }
 
-        public synchronized void removePlayer(String playerName) {   //Если такой игрок есть, то удаляем
-            players.removeIf(p -> {
-                if (p.name.equals(playerName)) {
-                    safelyCloseObserver(p.observer);
-                    return true;
-                }
-                return false;
-            });
-
-            if (players.isEmpty()) {  //Если игроков не осталось, удаляем комнату. Иначе оставшемуся игроку обновляем комнату и ресетим игру
-                resetRoom();
-            } else if (status.equals("IN_PROGRESS")) {
-                status = "ABANDONED";
-                notifyPlayers();
-                resetGame();
+    //Поток JoinRoom глазами движка: снимок состояния превращаем в GameState из готовой заготовки с полем
+    static final class GameStateStream implements PlayerListener {
+        private final StreamObserver<com.example.tictactoe.GameState> observer;
+        private volatile String token;          //Появляется, когда движок посадил игрока
+        private volatile boolean cancelled;     //Клиент отвалился, возможно ещё до того, как мы узнали токен
+        private boolean finished;               //Поток уже закрыт, второй раз gRPC закрыть не даст
+
+        GameStateStream(StreamObserver<com.example.tictactoe.GameState> observer) {
+            this.observer = observer;
+        }
+
+        @Override
+        public void onState(GameSnapshot state) {
+            observer.onNext(GameStateTable.prototype(state.position()).toBuilder()  //Общая заготовка с полем, список клеток не копируется
+                    .setGameId(state.roomId())
+                    .setCurrentPlayer(state.currentPlayer())
+                    .setStatus(statusMessage(state))
+                    .setPlayersCount(state.playersCount())
+                    .setPlayerSymbol(state.playerSymbol())
+                    .setSessionToken(state.sessionToken())
+                    .build());
+        }
+
+        @Override
+        public synchronized void onClosed() {
+            if (!finished) {
+                finished = true;
+                observer.onCompleted();
             }
         }
 
-        private void safelyCloseObserver(StreamObserver<com.example.tictactoe.GameState> observer) {    //Безопасно перекидываеи клиента на экран лобби
-            observer.onCompleted();
-        }
-
-        private void resetRoom() { //нулл игра и она завкрыта
-            this.game = null;
-            this.status = "CLOSED";
-        }
-
-        private void resetGame() {          //Пересоздаём игру
-            this.game = new Game(roomId);
-            players.getFirst().symbol = "X";   //Оставшийся игрок всегда будет крестиком
-            this.status = "WAITING";
-            notifyPlayers();        //Обновим ему инфу
-        }
-
-        public String getStatus() {
-            return status;
-        }
-
-        public int getPlayersCount() {
-            return players.size();
-        }
-
-        public String getRoomName() {
-            return roomName;
-        }
-
-        public boolean shouldBeRemoved() {    //Проверяет комнату на удаление
-            return status.equals("CLOSED") || players.isEmpty();
-        }
-
-        static class Player {       //Инфа о игроке
-            final String name;
-            String symbol;
-            final StreamObserver<com.example.tictactoe.GameState> observer; //Передаёт инфу о игре через этот поток
-
-            Player(String name, String symbol, StreamObserver<com.example.tictactoe.GameState> observer) {
-                this.name = name;
-                this.symbol = symbol;
-                this.observer = observer;
+        synchronized void fail(Status status) { //Если вход откатился, движок мог уже закрыть поток сам, тогда ошибку не шлём
+            if (!finished) {
+                finished = true;
+                observer.onError(status.asRuntimeException());
             }
         }
-    }
-
-    static class Game {
-        private String gameID;       //Для вывода в список
-        private final String[] board = new String[9];
-        private String currentPlayer = "X";        //Первый всегда крестик
-        private String status = "IN_PROGRESS";     //Игра начинается всегда в процессе
 
-        public Game(String gameId) {
-            this.gameID = gameId;
-            Arrays.fill(board, "");
-        }
-
-        public synchronized boolean makeMove(String symbol, int position) {   //Добавляем ход игрока на поле
-            if (!status.equals("IN_PROGRESS")
-                    || position < 0 || position >= 9
-                    || !board[position].isEmpty()
-                    || !symbol.equals(currentPlayer)) {
-                return false;
-            }
-
-            board[position] = symbol;
-            checkGameStatus();  //Проверка на победу
-
-            if (status.equals("IN_PROGRESS")) {  //Меняем ход игрока
-                currentPlayer = currentPlayer.equals("X") ? "O" : "X";
+        void attach(GameEngine engine, String token) {
+            this.token = token;
+            if (cancelled) {  //Отмена пришла, пока игрок садился - отпускаем его так же, как при обрыве
+                engine.detach(token, this);
             }
-            return true;
         }
 
-        private void checkGameStatus() {        //бъявляем комнату победу, ничья, или продолжаем
-            String winner = checkWinner();
-            if (winner != null) {    //Если всё такие есть результат
-                status = winner + "_WON";
-            } else if (isBoardFull()) { //Если ничья
-                status = "DRAW";
+        void cancel(GameEngine engine) {
+            cancelled = true;
+            String current = token;
+            if (current != null) {
+                engine.detach(current, this);
             }
         }
 
-        private String checkWinner() {  //Проверяет комбы победы
-            int[][] winCombinations = {
-                    {0, 1, 2}, {3, 4, 5}, {6, 7, 8},
-                    {0, 3, 6}, {1, 4, 7}, {2, 5, 8},
-                    {0, 4, 8}, {2, 4, 6}
+        private static String statusMessage(GameSnapshot state) { //В зависимости от статуса могут потребоваться разные сообщения для клиентов
+            return switch (state.status()) {
+                case "WAITING" -> "Ожидание игроков (" + state.playersCount() + "/2)";
+                case "IN_PROGRESS" -> "Сейчас ходит: " + state.currentPlayer();
+                case "X_WON" -> "Победил X!";
+                case "O_WON" -> "Победил O!";
+                case "DRAW" -> "Ничья!";
+                case "ABANDONED" -> "Соперник покинул игру";
+                default -> "Неизвестный статус";
             };
-
-            for (int[] combo : winCombinations) {
-                String a = board[combo[0]];
-                String b = board[combo[1]];
-                String c = board[combo[2]];
-
-                if (!a.isEmpty() && a.equals(b) && a.equals(c)) {
-                    return a;
-                }
-            }
-            return null;   //Если не нашлась комба, продолжаем играть
-        }
-
-        private boolean isBoardFull() {      //Проверка на ничью
-            return Arrays.stream(board).noneMatch(String::isEmpty);
-        }
-
-        public String[] getBoard() {
-            return Arrays.copyOf(board, 9);
-        }
-
-        public String getCurrentPlayer() {
-            return currentPlayer;
-        }
-
-        public String getStatus() {
-            return status;
         }
     }
-}
\ No newline at end of file
+}
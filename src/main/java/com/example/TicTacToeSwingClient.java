@@ -2,20 +2,27 @@ package com.example;
 
 import io.grpc.ManagedChannel;          //Для связи с серверои
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import javax.swing.*;         //Интерфейс
 import java.awt.*;
 import java.util.Arrays;   //По мелочи
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TicTacToeSwingClient extends JFrame {
+    private static final int MAX_RECONNECT_ATTEMPTS = 30;   //Столько раз пробуем вернуться на своё место, пока сервер перезапускается
+    private static final long RECONNECT_DELAY_MS = 1000;
+
     private ManagedChannel channel; //Связзь с манагером
     private com.example.tictactoe.TicTacToeGrpc.TicTacToeBlockingStub blockingStub; //Связь с сервером
     private com.example.tictactoe.TicTacToeGrpc.TicTacToeStub asyncStub;
     private String playerName;   //Инфа о клиенте
     private String currentGameId;
     private String playerSymbol;
+    private volatile String sessionToken = "";   //Выдаёт сервер при входе в комнату, с ним ходим и выходим
+    private final AtomicInteger reconnectAttempts = new AtomicInteger();
 
     private JPanel mainPanel; //Интерфей
     private CardLayout cardLayout;
@@ -237,6 +244,21 @@ public class TicTacToeSwingClient extends JFrame {
         cardLayout.show(mainPanel, "game"); //Меняем на поле игровое
     }
 
+    private void reconnect() {    //Сервер перезапускается: ждём и возвращаемся на своё место по токену
+        new Thread(() -> {
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            asyncStub.joinRoom(com.example.tictactoe.JoinRoomRequest.newBuilder()
+                    .setRoomId(currentGameId)
+                    .setSessionToken(sessionToken)
+                    .build(), new GameStateObserver());
+        }).start();
+    }
+
     private void resetGameUI() {       //Все поля пустые и ожидаем игрока
         Arrays.stream(gridButtons).flatMap(Arrays::stream).forEach(btn -> {
             btn.setText("");
@@ -256,6 +278,7 @@ public class TicTacToeSwingClient extends JFrame {
                         .setGameId(currentGameId)
                         .setPlayerName(playerName)
                         .setPosition(position)
+                        .setSessionToken(sessionToken)
                         .build());
 
                 SwingUtilities.invokeLater(() -> {
@@ -296,10 +319,14 @@ public class TicTacToeSwingClient extends JFrame {
         );
 
         if (choice == JOptionPane.YES_OPTION) {
-            blockingStub.leaveRoom(com.example.tictactoe.LeaveRequest.newBuilder()
-                    .setRoomId(currentGameId)
-                    .setPlayerName(playerName)
-                    .build());
+            if (!sessionToken.isEmpty()) {  //Без токена сервер нас уже и так выпустил
+                blockingStub.leaveRoom(com.example.tictactoe.LeaveRequest.newBuilder()
+                        .setRoomId(currentGameId)
+                        .setPlayerName(playerName)
+                        .setSessionToken(sessionToken)
+                        .build());
+                sessionToken = "";
+            }
             cardLayout.show(mainPanel, "main");
             refreshRooms();
         }
@@ -314,6 +341,10 @@ public class TicTacToeSwingClient extends JFrame {
     private class GameStateObserver implements StreamObserver<com.example.tictactoe.GameState> {
         @Override
         public void onNext(com.example.tictactoe.GameState state) {  //Принимаем от сервера инфу и обновляем статус игры, поля, интерфейса
+            if (!state.getSessionToken().isEmpty()) {
+                sessionToken = state.getSessionToken();
+            }
+            reconnectAttempts.set(0);
             SwingUtilities.invokeLater(() -> {
                 handleStatusUpdate(state);
                 if (!(state.getStatus().contains("Соперник"))) updateBoard(state.getBoardList());
@@ -388,6 +419,13 @@ public class TicTacToeSwingClient extends JFrame {
 
         @Override
         public void onError(Throwable t) {        //Вдруг если что вот да
+            if (!sessionToken.isEmpty()
+                    && Status.fromThrowable(t).getCode() == Status.Code.UNAVAILABLE
+                    && reconnectAttempts.incrementAndGet() <= MAX_RECONNECT_ATTEMPTS) {  //Сервер недоступен, но место за нами держат
+                SwingUtilities.invokeLater(() -> statusLabel.setText("Соединение потеряно, переподключение..."));
+                reconnect();
+                return;
+            }
             SwingUtilities.invokeLater(() -> {
                 JOptionPane.showMessageDialog(
                         TicTacToeSwingClient.this,
@@ -401,6 +439,7 @@ public class TicTacToeSwingClient extends JFrame {
 
         @Override
         public void onCompleted() {
+            sessionToken = "";   //Сервер нас выпустил из комнаты, токен больше не действует
             SwingUtilities.invokeLater(() -> {
                 cardLayout.show(mainPanel, "main");
                 refreshRooms();
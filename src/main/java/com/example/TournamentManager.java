@@ -0,0 +1,539 @@
+package com.example;
+
+import com.example.engine.EngineEvent;
+import com.example.engine.GameEngine;
+import com.example.engine.GameEngineException;
+import com.example.tictactoe.Pairing; //Классы из протофайла
+import com.example.tictactoe.Standing;
+import com.example.tictactoe.TournamentResponse;
+import com.example.tictactoe.TournamentUpdate;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Турниры: швейцарка и олимпийка. Комнаты на каждый раунд создаются сами, победители проходят дальше,
+//как только комната сообщает о конце игры. Никакого опроса: следующий раунд стартует, когда закончился последний матч текущего
+class TournamentManager {
+    static final int MAX_TOURNAMENTS = 1_000;
+    static final int MAX_PLAYERS = 100_000;
+    static final long ROUND_TIMEOUT_MINUTES = 10;      //Кто не доиграл за это время с момента, как матчу дали комнату, тому засчитываем техническое поражение
+    static final long SEAT_RETRY_SECONDS = 5;          //Как часто проверяем, не освободились ли комнаты для матчей в очереди
+    static final int SEAT_BATCH = 256;                 //Сколько матчей из очереди пробуем посадить за раз
+    static final long FINISHED_TTL_MINUTES = 60;       //Столько держим законченный турнир, чтобы можно было посмотреть итоги
+
+    private final GameEngine engine;
+    private final ConcurrentMap<String, Tournament> tournaments = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Match> matchesByRoom = new ConcurrentHashMap<>();  //По комнате находим матч, когда игра закончилась
+    private final AtomicInteger tournamentCounter = new AtomicInteger();
+    private final Queue<Tournament> awaitingRooms = new ConcurrentLinkedQueue<>();  //Турниры, чьим матчам не хватило комнат, по очереди
+    private final ScheduledExecutorService loop = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "tictactoe-tournaments");   //Результаты разбираем здесь, а не в потоке хода
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    TournamentManager(GameEngine engine) {
+        this.engine = engine;
+        loop.scheduleWithFixedDelay(this::seatQueued, SEAT_RETRY_SECONDS, SEAT_RETRY_SECONDS, TimeUnit.SECONDS); //Комнаты освобождаются и без турниров, например когда игроки уходят
+    }
+
+    TournamentResponse create(String name, String format, int rounds) {
+        Format parsed = Format.parse(format);
+        if (parsed == null) {
+            return failure("Неизвестный формат турнира: " + format);
+        }
+        if (engine.isDraining()) {
+            return failure("Сервер перезапускается, попробуйте позже");
+        }
+        if (tournaments.size() >= MAX_TOURNAMENTS) {
+            return failure("Достигнут лимит турниров на сервере");
+        }
+        String id = "tournament-" + tournamentCounter.incrementAndGet();
+        tournaments.put(id, new Tournament(id, name, parsed, Math.max(0, rounds)));
+        return success(id, "Турнир создан");
+    }
+
+    TournamentResponse register(String tournamentId, String playerName) {
+        Tournament t = tournaments.get(tournamentId);
+        if (t == null) {
+            return failure("Турнир не найден");
+        }
+        if (playerName.isEmpty()) {
+            return failure("Не указано имя игрока");
+        }
+        if (engine.isDraining()) {  //Турниры перезапуск не переживают, записываться уже некуда
+            return failure("Сервер перезапускается, попробуйте позже");
+        }
+        synchronized (t) {
+            if (!t.status.equals("REGISTRATION")) {
+                return failure("Регистрация уже закрыта");
+            }
+            if (t.entrants.size() >= MAX_PLAYERS) {
+                return failure("Турнир заполнен");
+            }
+            t.entrants.putIfAbsent(playerName, new Entrant(playerName, t.entrants.size()));
+        }
+        return success(tournamentId, "Игрок зарегистрирован");
+    }
+
+    TournamentResponse start(String tournamentId) {
+        Tournament t = tournaments.get(tournamentId);
+        if (t == null) {
+            return failure("Турнир не найден");
+        }
+        synchronized (t) {
+            if (!t.status.equals("REGISTRATION")) {
+                return failure("Турнир уже запущен");
+            }
+            if (t.entrants.size() < 2) {
+                return failure("Нужно хотя бы два игрока");
+            }
+            int totalRounds = t.totalRounds;
+            t.status = "RUNNING";
+            if (t.totalRounds == 0) {  //Для швейцарки по умолчанию столько раундов, сколько нужно олимпийке
+                t.totalRounds = 32 - Integer.numberOfLeadingZeros(t.entrants.size() - 1);
+            }
+            try {
+                startRound(t);
+            } catch (GameEngineException e) {  //Сервер останавливается: турнир остаётся на регистрации
+                t.status = "REGISTRATION";
+                t.totalRounds = totalRounds;
+                return failure(e.getMessage());
+            }
+        }
+        return success(tournamentId, "Турнир запущен");
+    }
+
+    void watch(String tournamentId, StreamObserver<TournamentUpdate> observer) {
+        Tournament t = tournaments.get(tournamentId);
+        if (t == null) {
+            observer.onError(io.grpc.Status.NOT_FOUND.withDescription("Турнир не найден").asRuntimeException());
+            return;
+        }
+        if (observer instanceof ServerCallStreamObserver<TournamentUpdate> serverObserver) {  //Отвалившихся зрителей убираем из рассылки
+            serverObserver.setOnCancelHandler(() -> t.watchers.remove(observer));
+        }
+        synchronized (t) {  //Под локом турнира, чтобы полное состояние не перемешалось с рассылкой результатов
+            observer.onNext(fullUpdate(t));
+            if (t.status.equals("FINISHED")) {
+                observer.onCompleted();
+            } else {
+                t.watchers.add(observer);
+            }
+        }
+    }
+
+    void onEvent(EngineEvent event, long sequence, boolean endOfBatch) { //Подписка на шину движка, нужны только концы игр
+        if (event.getType() == EngineEvent.Type.GAME_FINISHED) {
+            onGameFinished(event.getRoomId(), event.getXPlayer(), event.getOPlayer(), event.getStatus());
+        }
+    }
+
+    void onGameFinished(String roomId, String xPlayer, String oPlayer, String result) { //Зовётся из потоков шины, разбор идёт в своём потоке турниров
+        Match match = matchesByRoom.get(roomId);
+        if (match != null && !loop.isShutdown()) {
+            loop.execute(() -> recordGame(match, xPlayer, oPlayer, result));
+        }
+    }
+
+    //Сервер останавливается. Сетка турнира живёт только в памяти этого процесса, поэтому перезапуск турниры не переживают:
+    //комнаты матчей закрываем здесь, до снимка движка, иначе следующий процесс поднимет их без хозяина
+    void shutdown() {
+        loop.shutdownNow();
+        matchesByRoom.keySet().forEach(engine::closeRoom);
+        matchesByRoom.clear();
+    }
+
+    private void recordGame(Match match, String xPlayer, String oPlayer, String result) {
+        Tournament t = match.tournament;
+        synchronized (t) {
+            Entrant x = t.entrants.get(xPlayer);
+            Entrant o = t.entrants.get(oPlayer);
+            switch (result) {
+                case "X_WON" -> finishMatch(match, x, "WON");
+                case "O_WON" -> finishMatch(match, o, "WON");
+                default -> finishMatch(match, t.format == Format.SWISS ? null : o, "DRAW"); //В олимпийке при ничьей проходит нолик: у крестика было преимущество первого хода
+            }
+        }
+    }
+
+    //Под локом турнира. Комнаты получают сразу столько матчей, сколько влезает, остальные ждут в очереди турнира
+    //и садятся волнами по мере того, как комнаты освобождаются. Если сервер останавливается, первый раунд не стартует:
+    //бросаем GameEngineException, ничего не поменяв
+    private void startRound(Tournament t) {
+        List<Match> matches = t.format == Format.SWISS ? pairSwiss(t) : pairElimination(t);
+        List<Match> played = matches.stream().filter(match -> match.second != null).toList();
+        List<String> roomIds;
+        try {
+            roomIds = createRooms(t, t.round + 1, played);
+        } catch (GameEngineException e) {
+            if (t.round == 0) {
+                throw e;
+            }
+            roomIds = List.of();  //Турнир уже идёт, а сервер останавливается: матчи подождут в очереди
+        }
+        t.round++;
+        t.currentMatches = matches;
+        t.pending = 0;
+        for (Match match : matches) {
+            if (match.second == null) {  //Бай: игрок без пары сразу получает победу
+                match.first.hadBye = true;
+                match.winner = match.first;
+                match.outcome = "BYE";
+                if (t.format == Format.SWISS) {
+                    match.first.points += 1;
+                }
+                continue;
+            }
+            match.first.opponents.add(match.second.name);
+            match.second.opponents.add(match.first.name);
+            t.pending++;
+        }
+        seat(t, played.subList(0, roomIds.size()), roomIds);
+        t.queued.clear();
+        t.queued.addAll(played.subList(roomIds.size(), played.size()));
+        broadcast(t, fullUpdate(t));
+        if (t.pending == 0) {
+            advance(t);
+            return;
+        }
+        if (!t.queued.isEmpty() && !t.awaitingRooms) {
+            t.awaitingRooms = true;
+            awaitingRooms.add(t);
+        }
+    }
+
+    private List<String> createRooms(Tournament t, int round, List<Match> matches) { //ID комнат для первых матчей списка, сколько влезло
+        return engine.createTournamentRooms(t.name + " - раунд " + round,
+                matches.stream().map(match -> Set.of(match.first.name, match.second.name)).toList());
+    }
+
+    private void seat(Tournament t, List<Match> wave, List<String> roomIds) { //Под локом турнира. У каждой волны свой таймаут, отсчёт с момента, как дали комнаты
+        if (wave.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < wave.size(); i++) {
+            Match match = wave.get(i);
+            match.roomId = roomIds.get(i);
+            matchesByRoom.put(match.roomId, match);
+        }
+        int round = t.round;
+        List<Match> started = List.copyOf(wave);
+        ScheduledFuture<?> timeout = schedule(() -> onWaveTimeout(t, round, started), ROUND_TIMEOUT_MINUTES);
+        if (timeout != null) {
+            t.timeouts.add(timeout);
+        }
+    }
+
+    private void seatQueued() { //В потоке турниров: освободившиеся комнаты раздаём турнирам по очереди
+        Tournament t;
+        while ((t = awaitingRooms.peek()) != null) {
+            synchronized (t) {
+                if (!seatQueued(t)) {  //Комнаты кончились, остальные подождут
+                    return;
+                }
+            }
+            awaitingRooms.poll();
+        }
+    }
+
+    private boolean seatQueued(Tournament t) { //Под локом турнира. true, если очередь турнира разобрана
+        while (!t.queued.isEmpty() && t.status.equals("RUNNING")) {
+            List<Match> batch = t.queued.stream().limit(SEAT_BATCH).toList();
+            List<String> roomIds;
+            try {
+                roomIds = createRooms(t, t.round, batch);
+            } catch (GameEngineException e) {  //Сервер останавливается
+                return false;
+            }
+            List<Match> wave = batch.subList(0, roomIds.size());
+            wave.forEach(match -> t.queued.poll());
+            seat(t, wave, roomIds);
+            if (!wave.isEmpty()) {
+                TournamentUpdate.Builder update = TournamentUpdate.newBuilder()  //Зрителям только пары, которые сели играть
+                        .setTournamentId(t.id)
+                        .setStatus(t.status)
+                        .setRound(t.round);
+                wave.forEach(match -> update.addPairings(match.toPairing()));
+                broadcast(t, update.build());
+            }
+            if (wave.size() < batch.size()) {
+                return false;
+            }
+        }
+        t.awaitingRooms = false;
+        return true;
+    }
+
+    private void onWaveTimeout(Tournament t, int round, List<Match> wave) {
+        synchronized (t) {
+            if (t.round != round || !t.status.equals("RUNNING")) {
+                return;
+            }
+            for (Match match : wave) {
+                if (match.outcome != null) {
+                    continue;
+                }
+                List<String> seated = engine.getPlayerNames(match.roomId);
+                if (seated.size() == 1) {  //Пришёл только один - он и проходит
+                    finishMatch(match, t.entrants.get(seated.getFirst()), "TIMEOUT");
+                } else {  //Не пришли или не доиграли: в швейцарке без очков, в олимпийке проходит тот, кто выше посеян
+                    finishMatch(match, t.format == Format.SWISS ? null : match.first, "TIMEOUT");
+                }
+            }
+        }
+    }
+
+    private void finishMatch(Match match, Entrant winner, String outcome) { //Под локом турнира
+        if (match.outcome != null) {
+            return;
+        }
+        Tournament t = match.tournament;
+        match.winner = winner;
+        match.outcome = outcome;
+        if (match.roomId != null) {
+            matchesByRoom.remove(match.roomId);
+            engine.closeRoom(match.roomId);  //Освобождаем игроков, чтобы они могли сесть за следующий матч
+            if (!awaitingRooms.isEmpty()) {  //Освободилась комната - может, кто-то в очереди её ждёт
+                execute(this::seatQueued);
+            }
+        }
+        if (t.format == Format.SWISS) {
+            if (winner != null) {
+                winner.points += 1;
+            } else if (outcome.equals("DRAW")) {
+                match.first.points += 0.5;
+                match.second.points += 0.5;
+            }
+        } else {
+            (winner == match.first ? match.second : match.first).eliminated = true;
+        }
+        broadcast(t, TournamentUpdate.newBuilder()   //Дальше шлём только изменившуюся пару, а не весь турнир
+                .setTournamentId(t.id)
+                .setStatus(t.status)
+                .setRound(t.round)
+                .addPairings(match.toPairing())
+                .build());
+        if (--t.pending == 0) {
+            t.timeouts.forEach(timeout -> timeout.cancel(false));
+            t.timeouts.clear();
+            advance(t);
+        }
+    }
+
+    private void advance(Tournament t) { //Раунд закончился: либо следующий, либо итоги
+        if (t.format == Format.SINGLE_ELIMINATION) {
+            List<Entrant> alive = t.entrants.values().stream().filter(e -> !e.eliminated).toList();
+            if (alive.size() <= 1) {
+                finish(t, alive.isEmpty() ? null : alive.getFirst());
+                return;
+            }
+        } else if (t.round >= t.totalRounds) {
+            finish(t, t.entrants.values().stream().min(STANDINGS_ORDER).orElse(null));
+            return;
+        }
+        startRound(t);
+    }
+
+    private void finish(Tournament t, Entrant winner) {
+        t.status = "FINISHED";
+        t.winner = winner != null ? winner.name : "";
+        broadcast(t, fullUpdate(t));
+        t.watchers.forEach(StreamObserver::onCompleted);
+        t.watchers.clear();
+        schedule(() -> tournaments.remove(t.id, t), FINISHED_TTL_MINUTES);
+    }
+
+    private void execute(Runnable task) {
+        try {
+            loop.execute(task);
+        } catch (RejectedExecutionException e) {  //Поток турниров уже остановлен вместе с сервером
+        }
+    }
+
+    private ScheduledFuture<?> schedule(Runnable task, long minutes) { //null, если поток турниров уже остановлен вместе с сервером
+        try {
+            return loop.schedule(task, minutes, TimeUnit.MINUTES);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private static List<Match> pairSwiss(Tournament t) { //Сильные с сильными, без повторных встреч, если это возможно
+        List<Entrant> order = new ArrayList<>(t.entrants.values());
+        order.sort(STANDINGS_ORDER);
+        List<Match> matches = new ArrayList<>(order.size() / 2 + 1);
+        if (order.size() % 2 == 1) {  //Бай получает самый слабый из тех, у кого его ещё не было
+            int byeIndex = order.size() - 1;
+            for (int i = order.size() - 1; i >= 0; i--) {
+                if (!order.get(i).hadBye) {
+                    byeIndex = i;
+                    break;
+                }
+            }
+            matches.add(new Match(t, order.remove(byeIndex), null));
+        }
+        boolean[] paired = new boolean[order.size()];
+        for (int i = 0; i < order.size(); i++) {
+            if (paired[i]) {
+                continue;
+            }
+            Entrant first = order.get(i);
+            int partner = -1;
+            for (int j = i + 1; j < order.size(); j++) {
+                if (!paired[j]) {
+                    if (partner == -1) {
+                        partner = j;  //Запасной вариант, если новых соперников не осталось
+                    }
+                    if (!first.opponents.contains(order.get(j).name)) {
+                        partner = j;
+                        break;
+                    }
+                }
+            }
+            paired[i] = true;
+            paired[partner] = true;
+            matches.add(new Match(t, first, order.get(partner)));
+        }
+        return matches;
+    }
+
+    private static List<Match> pairElimination(Tournament t) { //Первый посев с последним, второй с предпоследним и так далее
+        List<Entrant> alive = new ArrayList<>(t.entrants.values().stream().filter(e -> !e.eliminated).toList());
+        List<Match> matches = new ArrayList<>(alive.size() / 2 + 1);
+        if (alive.size() % 2 == 1) {
+            matches.add(new Match(t, alive.removeFirst(), null));  //Лучший посев проходит без игры
+        }
+        for (int i = 0, j = alive.size() - 1; i < j; i++, j--) {
+            matches.add(new Match(t, alive.get(i), alive.get(j)));
+        }
+        return matches;
+    }
+
+    private static TournamentUpdate fullUpdate(Tournament t) {
+        TournamentUpdate.Builder update = TournamentUpdate.newBuilder()
+                .setTournamentId(t.id)
+                .setStatus(t.status)
+                .setRound(t.round)
+                .setWinner(t.winner);
+        t.currentMatches.forEach(match -> update.addPairings(match.toPairing()));
+        t.entrants.values().stream().sorted(STANDINGS_ORDER).forEach(e -> update.addStandings(Standing.newBuilder()
+                .setPlayerName(e.name)
+                .setPoints(e.points)
+                .setEliminated(e.eliminated)
+                .build()));
+        return update.build();
+    }
+
+    private static void broadcast(Tournament t, TournamentUpdate update) {
+        t.watchers.forEach(watcher -> watcher.onNext(update));
+    }
+
+    private static TournamentResponse success(String tournamentId, String message) {
+        return TournamentResponse.newBuilder().setSuccess(true).setTournamentId(tournamentId).setMessage(message).build();
+    }
+
+    private static TournamentResponse failure(String message) {
+        return TournamentResponse.newBuilder().setSuccess(false).setMessage(message).build();
+    }
+
+    private static final Comparator<Entrant> STANDINGS_ORDER = Comparator
+            .comparingDouble((Entrant e) -> -e.points)
+            .thenComparingInt(e -> e.seed);
+
+    enum Format {
+        SWISS, SINGLE_ELIMINATION;
+
+        static Format parse(String value) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final class Tournament { //Всё, кроме зрителей, меняется только под локом турнира
+        final String id;
+        final String name;
+        final Format format;
+        final Map<String, Entrant> entrants = new LinkedHashMap<>();  //Порядок регистрации - это посев
+        final List<StreamObserver<TournamentUpdate>> watchers = new CopyOnWriteArrayList<>();
+        int totalRounds;
+        String status = "REGISTRATION";
+        String winner = "";
+        int round;
+        int pending;                    //Сколько матчей раунда ещё не закончено
+        List<Match> currentMatches = List.of();
+        final Deque<Match> queued = new ArrayDeque<>();   //Матчи раунда, которым пока не хватило комнат
+        boolean awaitingRooms;          //Турнир стоит в очереди за комнатами
+        final List<ScheduledFuture<?>> timeouts = new ArrayList<>();  //Таймауты волн текущего раунда
+
+        Tournament(String id, String name, Format format, int totalRounds) {
+            this.id = id;
+            this.name = name;
+            this.format = format;
+            this.totalRounds = totalRounds;
+        }
+    }
+
+    static final class Entrant {
+        final String name;
+        final int seed;
+        final Set<String> opponents = new HashSet<>();
+        double points;
+        boolean eliminated;
+        boolean hadBye;
+
+        Entrant(String name, int seed) {
+            this.name = name;
+            this.seed = seed;
+        }
+    }
+
+    static final class Match {
+        final Tournament tournament;
+        final Entrant first;
+        final Entrant second;           //null, если это бай
+        String roomId;                  //null, пока матч ждёт комнату в очереди
+        Entrant winner;
+        String outcome;                 //null, пока матч идёт
+
+        Match(Tournament tournament, Entrant first, Entrant second) {
+            this.tournament = tournament;
+            this.first = first;
+            this.second = second;
+        }
+
+        Pairing toPairing() {
+            return Pairing.newBuilder()
+                    .setRoomId(roomId != null ? roomId : "")
+                    .setFirstPlayer(first.name)
+                    .setSecondPlayer(second != null ? second.name : "")
+                    .setResult(outcome != null ? outcome : "")
+                    .setWinner(winner != null ? winner.name : "")
+                    .build();
+        }
+    }
+}
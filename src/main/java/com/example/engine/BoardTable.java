@@ -0,0 +1,90 @@
+package com.example.engine;
+
+import java.util.Arrays;
+import java.util.List;
+
+//Все 5478 позиций, которые реально встречаются в крестиках-ноликах, посчитаны один раз при старте.
+//Позиция кодируется числом в троичной системе: клетка i - это цифра при 3^i (0 - пусто, 1 - X, 2 - O).
+//По коду сразу берём готовый неизменяемый список клеток, так что на каждое обновление поле заново не собирается
+public final class BoardTable {
+    public static final int EMPTY = 0;       //Код пустого поля
+    public static final int POSITIONS = 19_683;    //3^9, столько всего кодов, достижимых из них меньше
+    private static final int[] POW3 = {1, 3, 9, 27, 81, 243, 729, 2187, 6561};
+    private static final String[] SYMBOLS = {"", "X", "O"};
+    private static final int[][] LINES = {
+            {0, 1, 2}, {3, 4, 5}, {6, 7, 8},
+            {0, 3, 6}, {1, 4, 7}, {2, 5, 8},
+            {0, 4, 8}, {2, 4, 6}
+    };
+
+    private static final List<String>[] TABLE = newTable();
+
+    static {
+        explore(new int[9], EMPTY, 1);
+    }
+
+    private BoardTable() {
+    }
+
+    public static List<String> board(int position) {
+        List<String> board = TABLE[position];
+        return board != null ? board : build(position);  //Недостижимой позиции в таблице нет, собираем на месте
+    }
+
+    public static boolean isReachable(int position) { //Позиция встречается в настоящей партии, для неё всё готово заранее
+        return TABLE[position] != null;
+    }
+
+    public static int withMove(int position, int cell, String symbol) { //Код позиции после хода
+        return position + (symbol.equals("X") ? 1 : 2) * POW3[cell];
+    }
+
+    public static int encode(List<String> board) { //Для восстановления из снимка
+        int position = EMPTY;
+        for (int cell = 0; cell < 9; cell++) {
+            if (!board.get(cell).isEmpty()) {
+                position = withMove(position, cell, board.get(cell));
+            }
+        }
+        return position;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String>[] newTable() {
+        return (List<String>[]) new List[POSITIONS];
+    }
+
+    private static void explore(int[] cells, int position, int turn) { //Обходим все партии от пустого поля, на концах игры не идём дальше
+        if (TABLE[position] != null) {
+            return;
+        }
+        TABLE[position] = build(position);
+        if (isFinished(cells)) {
+            return;
+        }
+        for (int cell = 0; cell < 9; cell++) {
+            if (cells[cell] == 0) {
+                cells[cell] = turn;
+                explore(cells, position + turn * POW3[cell], 3 - turn);
+                cells[cell] = 0;
+            }
+        }
+    }
+
+    private static boolean isFinished(int[] cells) {
+        for (int[] line : LINES) {
+            if (cells[line[0]] != 0 && cells[line[0]] == cells[line[1]] && cells[line[0]] == cells[line[2]]) {
+                return true;
+            }
+        }
+        return Arrays.stream(cells).noneMatch(c -> c == 0);
+    }
+
+    private static List<String> build(int position) {
+        String[] cells = new String[9];
+        for (int cell = 0, rest = position; cell < 9; cell++, rest /= 3) {
+            cells[cell] = SYMBOLS[rest % 3];
+        }
+        return List.of(cells);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.engine;
+
+//Событие из жизни комнаты в кольце шины. Слоты создаются один раз и переиспользуются по кругу,
+//поэтому обработчик должен забрать нужные поля внутри onEvent и не хранить сам объект
+public final class EngineEvent {
+    Type type;
+    String roomId;
+    String roomName;        //ROOM_CREATED
+    String playerName;      //PLAYER_JOINED, MOVE_APPLIED
+    String symbol;          //PLAYER_JOINED, MOVE_APPLIED
+    int cell = -1;          //MOVE_APPLIED
+    String status;          //MOVE_APPLIED: статус игры после хода; GAME_FINISHED: X_WON, O_WON или DRAW
+    String xPlayer;         //GAME_FINISHED
+    String oPlayer;         //GAME_FINISHED
+    int playersCount;
+    long timestampNanos;    //System.nanoTime() в момент публикации
+
+    EngineEvent reset(Type type, String roomId, int playersCount) { //Чистим хвост от прошлого круга, чтобы обработчик не увидел чужие поля
+        this.type = type;
+        this.roomId = roomId;
+        this.roomName = null;
+        this.playerName = null;
+        this.symbol = null;
+        this.cell = -1;
+        this.status = null;
+        this.xPlayer = null;
+        this.oPlayer = null;
+        this.playersCount = playersCount;
+        this.timestampNanos = System.nanoTime();
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getRoomName() {
+        return roomName;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getCell() {
+        return cell;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getXPlayer() {
+        return xPlayer;
+    }
+
+    public String getOPlayer() {
+        return oPlayer;
+    }
+
+    public int getPlayersCount() {
+        return playersCount;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public enum Type {
+        ROOM_CREATED,
+        PLAYER_JOINED,
+        MOVE_APPLIED,
+        GAME_FINISHED,
+        ROOM_CLOSED
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.engine;
+
+import java.util.List;
+
+//Незаконченные игры, снятые при остановке. Как их хранить, решает тот, кто встроил движок, сервер пишет их в protobuf
+public record EngineSnapshot(int roomCounter, List<SavedRoom> rooms) {
+    public record SavedRoom(String roomId, String roomName, String status,
+                            List<String> board,     //Пусто, если игра ещё не началась
+                            String currentPlayer, String gameStatus, List<SavedPlayer> players,
+                            List<String> allowedPlayers) {   //Пусто, если комната публичная
+    }
+
+    public record SavedPlayer(String playerName, String symbol, String sessionToken) {
+    }
+}
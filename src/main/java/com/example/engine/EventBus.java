@@ -0,0 +1,150 @@
+package com.example.engine;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+//Шина событий движка: комната только кладёт событие в кольцо и идёт дальше, а рейтинг, турниры и всё, что добавим потом,
+//разбирают события пачками в своих потоках. Кольцо выбираем по ID комнаты, так что события одной комнаты приходят по порядку.
+//Рассылку состояния игрокам сюда не переносим: её ждёт сам игрок, лишний переход между потоками только добавит задержку
+public class EventBus {
+    public static final int DEFAULT_SHARDS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_CAPACITY = 4096;    //Событий на шард, должно быть степенью двойки
+    static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    private final EventRing[] shards;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    public EventBus(int shards, int capacity, WaitStrategy waitStrategy) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Нужен хотя бы один шард: " + shards);
+        }
+        this.shards = new EventRing[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new EventRing(capacity, waitStrategy);
+        }
+    }
+
+    //Подписка: на каждый шард свой обработчик из фабрики и свой поток. Видны события, опубликованные после подписки
+    public void subscribe(String name, Supplier<? extends EventHandler> handlers) {
+        for (int i = 0; i < shards.length; i++) {
+            Subscriber subscriber = new Subscriber(shards[i], handlers.get());
+            Thread thread = new Thread(subscriber, "tictactoe-events-" + name + "-" + i);
+            thread.setDaemon(true);
+            subscriber.thread = thread;
+            subscribers.add(subscriber);
+            thread.start();
+        }
+    }
+
+    public void close() { //Подписчики дочитывают всё, что уже опубликовано, и останавливаются
+        subscribers.forEach(subscriber -> subscriber.halted.set(true));
+        for (EventRing ring : shards) {
+            ring.signalAll();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CLOSE_TIMEOUT_SECONDS);
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            subscriber.ring.removeGating(subscriber.sequence);  //Дальше продюсеры на этого подписчика не смотрят
+        }
+        subscribers.clear();
+    }
+
+    void publishRoomCreated(String roomId, String roomName) {
+        EventRing ring = shardOf(roomId);
+        long sequence = ring.claim();
+        ring.get(sequence).reset(EngineEvent.Type.ROOM_CREATED, roomId, 0).roomName = roomName;
+        ring.publish(sequence);
+    }
+
+    void publishPlayerJoined(String roomId, String playerName, String symbol, int playersCount) {
+        EventRing ring = shardOf(roomId);
+        long sequence = ring.claim();
+        EngineEvent event = ring.get(sequence).reset(EngineEvent.Type.PLAYER_JOINED, roomId, playersCount);
+        event.playerName = playerName;
+        event.symbol = symbol;
+        ring.publish(sequence);
+    }
+
+    void publishMoveApplied(String roomId, String playerName, String symbol, int cell, String status, int playersCount) {
+        EventRing ring = shardOf(roomId);
+        long sequence = ring.claim();
+        EngineEvent event = ring.get(sequence).reset(EngineEvent.Type.MOVE_APPLIED, roomId, playersCount);
+        event.playerName = playerName;
+        event.symbol = symbol;
+        event.cell = cell;
+        event.status = status;
+        ring.publish(sequence);
+    }
+
+    void publishGameFinished(String roomId, String xPlayer, String oPlayer, String result, int playersCount) {
+        EventRing ring = shardOf(roomId);
+        long sequence = ring.claim();
+        EngineEvent event = ring.get(sequence).reset(EngineEvent.Type.GAME_FINISHED, roomId, playersCount);
+        event.xPlayer = xPlayer;
+        event.oPlayer = oPlayer;
+        event.status = result;
+        ring.publish(sequence);
+    }
+
+    void publishRoomClosed(String roomId) {
+        EventRing ring = shardOf(roomId);
+        long sequence = ring.claim();
+        ring.get(sequence).reset(EngineEvent.Type.ROOM_CLOSED, roomId, 0);
+        ring.publish(sequence);
+    }
+
+    private EventRing shardOf(String roomId) {
+        return shards[Math.floorMod(roomId.hashCode(), shards.length)];
+    }
+
+    //Поток подписчика на одном шарде: берёт всё, что опубликовано подряд, отдаёт обработчику и только потом освобождает слоты
+    private static final class Subscriber implements Runnable {
+        final EventRing ring;
+        final EventHandler handler;
+        final AtomicLong sequence;       //Докуда дочитали, по нему продюсеры понимают, что слоты свободны
+        final AtomicBoolean halted = new AtomicBoolean();
+        Thread thread;
+
+        Subscriber(EventRing ring, EventHandler handler) {
+            this.ring = ring;
+            this.handler = handler;
+            this.sequence = ring.addGating();
+        }
+
+        @Override
+        public void run() {
+            try {
+                long next = sequence.get() + 1;
+                while (true) {
+                    long available = ring.waitFor(next, halted);
+                    if (available < next) {  //Остановились и всё дочитали
+                        return;
+                    }
+                    for (long s = next; s <= available; s++) {
+                        try {
+                            handler.onEvent(ring.get(s), s, s == available);
+                        } catch (RuntimeException e) {  //Один сломанный обработчик не должен останавливать шину
+                            System.out.println("Обработчик событий упал на " + ring.get(s).getType() + ": " + e.getMessage());
+                        }
+                    }
+                    sequence.set(available);
+                    next = available + 1;
+                }
+            } catch (Error e) {
+                System.out.println("Подписчик шины " + Thread.currentThread().getName() + " остановлен: " + e);
+                throw e;
+            } finally {  //Умерший подписчик не должен держать продюсеров: иначе кольцо заполнится и claim() встанет под локом комнаты
+                ring.removeGating(sequence);
+            }
+        }
+    }
+}
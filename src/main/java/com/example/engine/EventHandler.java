@@ -0,0 +1,8 @@
+package com.example.engine;
+
+//Подписчик шины. На каждый шард создаётся свой обработчик, и зовётся он всегда из одного потока,
+//так что внутри можно копить пачку без синхронизации. endOfBatch - последнее из того, что уже опубликовано, самое время сбросить пачку
+@FunctionalInterface
+public interface EventHandler {
+    void onEvent(EngineEvent event, long sequence, boolean endOfBatch);
+}
@@ -0,0 +1,175 @@
+package com.example.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Один шард шины: кольцо заранее созданных событий в духе Disruptor.
+//Продюсер берёт номер слота одним CAS по курсору, заполняет слот и отмечает его опубликованным.
+//Комнаты одного шарда живут на разных потоках gRPC, поэтому продюсеров несколько, и готовность каждого слота
+//хранится отдельно (номер круга): подписчик читает подряд только то, что уже дописано целиком.
+//Продюсер не обгоняет самого медленного подписчика больше чем на размер кольца - это и есть ограничение ёмкости
+final class EventRing {
+    private static final int SPIN_TRIES = 100;
+    private static final long BLOCKING_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);  //На всякий случай просыпаемся сами, например при остановке
+
+    private final EngineEvent[] entries;
+    private final int mask;
+    private final int indexShift;
+    private final AtomicIntegerArray published;    //Номер круга, на котором слот дописан
+    private final AtomicLong cursor = new AtomicLong(-1);   //Последний выданный номер
+    private final WaitStrategy waitStrategy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicBoolean signalNeeded = new AtomicBoolean();  //Будим только если подписчик уснул, иначе публикация без лока
+    private volatile AtomicLong[] gating = new AtomicLong[0];   //Докуда дочитал каждый подписчик
+    private volatile long cachedGating = -1;   //Последний посчитанный минимум, чтобы не обходить подписчиков на каждую публикацию
+
+    EventRing(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Размер кольца должен быть степенью двойки: " + capacity);
+        }
+        this.entries = new EngineEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = new EngineEvent();
+        }
+        this.mask = capacity - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(capacity);
+        this.published = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    long claim() { //Номер свободного слота. Если кольцо полно, ждём самого медленного подписчика
+        while (true) {
+            long current = cursor.get();
+            long next = current + 1;
+            long wrapPoint = next - entries.length;
+            if (wrapPoint > cachedGating) {
+                long minimum = minimumGating(current);
+                if (wrapPoint > minimum) {
+                    LockSupport.parkNanos(1);
+                    continue;
+                }
+                cachedGating = minimum;
+            }
+            if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    EngineEvent get(long sequence) {
+        return entries[(int) sequence & mask];
+    }
+
+    void publish(long sequence) {
+        published.set((int) sequence & mask, (int) (sequence >>> indexShift));
+        if (waitStrategy == WaitStrategy.BLOCKING && signalNeeded.getAndSet(false)) {
+            signalAll();
+        }
+    }
+
+    long waitFor(long sequence, AtomicBoolean halted) { //Последний номер подряд от sequence, который уже можно читать; sequence - 1, если остановились и всё дочитали
+        int attempt = 0;
+        while (true) {
+            long claimed = cursor.get();
+            if (claimed >= sequence) {
+                long available = highestPublished(sequence, claimed);
+                if (available >= sequence) {
+                    return available;
+                }
+            } else if (halted.get()) {
+                return sequence - 1;
+            }
+            idle(sequence, attempt++);
+        }
+    }
+
+    AtomicLong addGating() { //Новый подписчик читает только то, что опубликуют после подписки
+        AtomicLong sequence = new AtomicLong(cursor.get());
+        synchronized (this) {
+            AtomicLong[] current = gating;
+            AtomicLong[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = sequence;
+            gating = updated;
+        }
+        return sequence;
+    }
+
+    synchronized void removeGating(AtomicLong sequence) {
+        gating = Arrays.stream(gating).filter(s -> s != sequence).toArray(AtomicLong[]::new);
+    }
+
+    void signalAll() {
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long minimumGating(long fallback) {
+        long minimum = fallback;
+        for (AtomicLong sequence : gating) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+
+    private long highestPublished(long from, long to) {
+        for (long sequence = from; sequence <= to; sequence++) {
+            if (published.get((int) sequence & mask) != (int) (sequence >>> indexShift)) {
+                return sequence - 1;
+            }
+        }
+        return to;
+    }
+
+    private void idle(long sequence, int attempt) {
+        switch (waitStrategy) {
+            case BUSY_SPIN -> Thread.onSpinWait();
+            case YIELDING -> {
+                if (attempt < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            case SLEEPING -> {
+                if (attempt < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else if (attempt < 2 * SPIN_TRIES) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(100);
+                }
+            }
+            case BLOCKING -> {
+                if (attempt < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                    return;
+                }
+                lock.lock();
+                try {
+                    signalNeeded.set(true);
+                    if (cursor.get() < sequence) {  //Перепроверяем после флага, иначе можно проспать публикацию
+                        notEmpty.awaitNanos(BLOCKING_TIMEOUT_NANOS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.engine;
+
+import java.util.Arrays;
+import java.util.List;
+
+class Game {
+    private String gameID;       //Для вывода в список
+    private final String[] board = new String[9];
+    private int position = BoardTable.EMPTY;   //То же поле одним числом, см. BoardTable
+    private String currentPlayer = "X";        //Первый всегда крестик
+    private String status = "IN_PROGRESS";     //Игра начинается всегда в процессе
+
+    public Game(String gameId) {
+        this.gameID = gameId;
+        Arrays.fill(board, "");
+    }
+
+    Game(String gameId, List<String> board, String currentPlayer, String status) { //Для восстановления после перезапуска
+        this.gameID = gameId;
+        board.toArray(this.board);
+        this.position = BoardTable.encode(board);
+        this.currentPlayer = currentPlayer;
+        this.status = status;
+    }
+
+    public synchronized boolean makeMove(String symbol, int position) {   //Добавляем ход игрока на поле
+        if (!status.equals("IN_PROGRESS")
+                || position < 0 || position >= 9
+                || !board[position].isEmpty()
+                || !symbol.equals(currentPlayer)) {
+            return false;
+        }
+
+        board[position] = symbol;
+        this.position = BoardTable.withMove(this.position, position, symbol);
+        checkGameStatus();  //Проверка на победу
+
+        if (status.equals("IN_PROGRESS")) {  //Меняем ход игрока
+            currentPlayer = currentPlayer.equals("X") ? "O" : "X";
+        }
+        return true;
+    }
+
+    private void checkGameStatus() {        //бъявляем комнату победу, ничья, или продолжаем
+        String winner = checkWinner();
+        if (winner != null) {    //Если всё такие есть результат
+            status = winner + "_WON";
+        } else if (isBoardFull()) { //Если ничья
+            status = "DRAW";
+        }
+    }
+
+    private String checkWinner() {  //Проверяет комбы победы
+        int[][] winCombinations = {
+                {0, 1, 2}, {3, 4, 5}, {6, 7, 8},
+                {0, 3, 6}, {1, 4, 7}, {2, 5, 8},
+                {0, 4, 8}, {2, 4, 6}
+        };
+
+        for (int[] combo : winCombinations) {
+            String a = board[combo[0]];
+            String b = board[combo[1]];
+            String c = board[combo[2]];
+
+            if (!a.isEmpty() && a.equals(b) && a.equals(c)) {
+                return a;
+            }
+        }
+        return null;   //Если не нашлась комба, продолжаем играть
+    }
+
+    private boolean isBoardFull() {      //Проверка на ничью
+        return Arrays.stream(board).noneMatch(String::isEmpty);
+    }
+
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    public String getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+//Движок крестиков-ноликов без сети: комнаты, ходы, сессии игроков. Ничего не знает ни о gRPC, ни о protobuf,
+//состояние отдаёт через PlayerListener, поэтому его можно встроить прямо в процесс и гонять игры без сериализации.
+//Сервер - только одна из обёрток над ним, см. TicTacToeServer.TicTacToeService.
+//Всё, что не нужно самому ходу (рейтинг, турниры, статистика), подписывается на EventBus и работает в своих потоках
+public class GameEngine {
+    public static final int MAX_ROOMS = 10_000;   //Больше комнат не держим, каждая висит в памяти
+    public static final int MAX_ROOMS_PER_OWNER = 20;   //Столько открытых комнат держит один создатель, иначе горстка клиентов займёт весь лимит
+    public static final int MAX_TOURNAMENT_ROOMS = 5_000;   //Отдельный бюджет под матчи турниров, общий лимит они не трогают
+    public static final long EMPTY_ROOM_TTL_NANOS = TimeUnit.MINUTES.toNanos(2);   //Столько живёт комната, в которую никто не зашёл
+    public static final long RECONNECT_GRACE_NANOS = TimeUnit.SECONDS.toNanos(60);   //Столько держим место за отвалившимся игроком
+
+    private final int maxRooms;
+    private final ConcurrentMap<String, Room> rooms = new ConcurrentHashMap<>();
+    private final AtomicInteger roomCounter = new AtomicInteger();
+    private final AtomicInteger roomSlots = new AtomicInteger();   //Занятые места под комнаты, считаем отдельно, чтобы не гонять size() у мапы
+    private final AtomicInteger tournamentSlots = new AtomicInteger();   //То же для турнирных комнат
+    private final ConcurrentMap<String, Integer> roomsByOwner = new ConcurrentHashMap<>();  //Создатель -> сколько его комнат открыто
+    private final SessionRegistry sessions = new SessionRegistry();  //Токен -> игрок, комната и место
+    private final EventBus events;
+    private volatile boolean draining;  //Движок останавливается, новые игры не начинаем
+
+    public GameEngine() {
+        this(MAX_ROOMS, new EventBus(EventBus.DEFAULT_SHARDS, EventBus.DEFAULT_CAPACITY, WaitStrategy.BLOCKING));
+    }
+
+    public GameEngine(int maxRooms, EventBus events) { //Встроенному движку лимит и ожидание в шине могут понадобиться другие, чем серверу
+        this.maxRooms = maxRooms;
+        this.events = events;
+    }
+
+    public void subscribe(String name, Supplier<? extends EventHandler> handlers) { //См. EventBus.subscribe
+        events.subscribe(name, handlers);
+    }
+
+    public void close() { //Дочитываем события подписчиками. Зовётся, когда ходов больше не будет
+        events.close();
+    }
+
+    public String createRoom(String roomName) { //Возвращает ID новой комнаты
+        return createRoom(roomName, null);
+    }
+
+    //owner - кто создаёт комнату, у сервера это адрес клиента. Одновременно у него может быть открыто не больше MAX_ROOMS_PER_OWNER комнат,
+    //null - без такого лимита
+    public String createRoom(String roomName, String owner) {
+        if (draining) {
+            throw new GameEngineException(GameEngineException.Reason.DRAINING, "Сервер перезапускается, попробуйте позже");
+        }
+        if (owner != null && roomsByOwner.merge(owner, 1, Integer::sum) > MAX_ROOMS_PER_OWNER) {
+            releaseOwned(owner);
+            throw new GameEngineException(GameEngineException.Reason.ROOM_LIMIT, "Слишком много открытых комнат, закройте одну из них");
+        }
+        if (roomSlots.incrementAndGet() > maxRooms) {   //Интерсептор сервера отсекает раньше, а здесь жёсткая граница на случай гонки
+            roomSlots.decrementAndGet();
+            releaseOwned(owner);
+            throw new GameEngineException(GameEngineException.Reason.ROOM_LIMIT, "Достигнут лимит комнат на сервере");
+        }
+        String roomId = "room-" + roomCounter.incrementAndGet();
+        events.publishRoomCreated(roomId, roomName);   //До того, как комната появится в мапе, иначе вход в неё может обогнать это событие
+        rooms.put(roomId, new Room(roomId, roomName, events, null, owner));
+        return roomId;
+    }
+
+    //Комнаты под матчи турнира, в каждую могут зайти только двое из своей пары. Создаём столько, сколько влезает в бюджет,
+    //по порядку пар: вернётся первые N ID, остальным парам придётся подождать, пока освободятся комнаты.
+    //Во время остановки бросаем DRAINING, как и createRoom
+    public List<String> createTournamentRooms(String roomName, List<Set<String>> pairs) {
+        if (draining) {
+            throw new GameEngineException(GameEngineException.Reason.DRAINING, "Сервер перезапускается, попробуйте позже");
+        }
+        int granted;
+        while (true) {
+            int taken = tournamentSlots.get();
+            granted = Math.max(0, Math.min(pairs.size(), MAX_TOURNAMENT_ROOMS - taken));
+            if (granted == 0 || tournamentSlots.compareAndSet(taken, taken + granted)) {
+                break;
+            }
+        }
+        List<String> roomIds = new ArrayList<>(granted);
+        for (Set<String> pair : pairs.subList(0, granted)) {
+            String roomId = "room-" + roomCounter.incrementAndGet();
+            events.publishRoomCreated(roomId, roomName);
+            rooms.put(roomId, new Room(roomId, roomName, events, pair, null));
+            roomIds.add(roomId);
+        }
+        return roomIds;
+    }
+
+    public void closeRoom(String roomId) { //Выпускаем всех игроков и убираем комнату
+        Room room = rooms.get(roomId);
+        if (room == null) {
+            return;
+        }
+        room.close();   //Сначала закрываем: недоигранную партию, которую прервали снаружи, не засчитываем никому
+        room.players().forEach(player -> {
+            sessions.release(player.name, player.token);
+            room.removePlayer(player);
+        });
+        removeRoom(roomId, room);
+    }
+
+    public List<String> getPlayerNames(String roomId) {
+        Room room = rooms.get(roomId);
+        return room != null ? room.getPlayerNames() : List.of();
+    }
+
+    public boolean isFull() {
+        return roomSlots.get() >= maxRooms;
+    }
+
+    public void removeStaleRooms() {  //Убираем комнаты, которые создали и бросили, иначе их можно наплодить бесконечно
+        long now = System.nanoTime();
+        rooms.forEach((id, room) -> {
+            if (room.closeIfStale(now, EMPTY_ROOM_TTL_NANOS)) {
+                removeRoom(id, room);
+            }
+        });
+    }
+
+    public void beginDrain() {
+        draining = true;
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    public int countActiveGames() {
+        int active = 0;
+        for (Room room : rooms.values()) {
+            if (room.getStatus().equals("IN_PROGRESS")) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    public EngineSnapshot freezeAndSnapshot() {  //Замораживаем каждую комнату и снимаем с неё состояние
+        List<EngineSnapshot.SavedRoom> saved = new ArrayList<>();
+        rooms.values().forEach(room -> {
+            EngineSnapshot.SavedRoom roomSnapshot = room.freezeAndSnapshot();
+            if (roomSnapshot != null) {
+                saved.add(roomSnapshot);
+            }
+        });
+        return new EngineSnapshot(roomCounter.get(), saved);
+    }
+
+    public void restore(EngineSnapshot snapshot) {  //Поднимаем комнаты прошлого процесса, игроки в них ждут переподключения
+        roomCounter.set(Math.max(roomCounter.get(), snapshot.roomCounter()));
+        long now = System.nanoTime();
+        snapshot.rooms().forEach(saved -> {
+            events.publishRoomCreated(saved.roomId(), saved.roomName());
+            Room room = Room.restore(saved, events, now);
+            rooms.put(room.getRoomId(), room);
+            slotsOf(room).incrementAndGet();
+            room.players().forEach(player -> {
+                if (!sessions.restore(new SessionRegistry.Session(player.token, room, player))) {
+                    room.players().remove(player);  //Без сессии место никто не освободит, поэтому сразу убираем
+                    System.out.println("Игрок " + player.name + " уже занят, место в " + room.getRoomId() + " не восстановлено");
+                }
+            });
+        });
+    }
+
+    private void removeRoom(String roomId, Room room) {
+        if (rooms.remove(roomId, room)) {
+            slotsOf(room).decrementAndGet();
+            releaseOwned(room.getOwner());
+        }
+    }
+
+    private void releaseOwned(String owner) {
+        if (owner != null) {
+            roomsByOwner.computeIfPresent(owner, (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private AtomicInteger slotsOf(Room room) {
+        return room.isPublic() ? roomSlots : tournamentSlots;
+    }
+
+    public List<RoomSummary> listOpenRooms() {  //Публичные комнаты, где ждут второго игрока
+        List<RoomSummary> open = new ArrayList<>();
+        rooms.forEach((id, room) -> {
+            if (room.isPublic() && room.getStatus().equals("WAITING") && room.getPlayersCount() == 1) {
+                open.add(new RoomSummary(id, room.getRoomName(), room.getPlayersCount(), room.getStatus()));
+            }
+        });
+        return open;
+    }
+
+    //Садим игрока в комнату и возвращаем токен сессии. Первое состояние с тем же токеном слушатель получит ещё до возврата.
+    //Если сесть нельзя, бросает GameEngineException
+    public String joinRoom(String roomId, String playerName, PlayerListener listener) {
+        if (draining) {  //Переподключаться можно, а вот садиться за новую игру уже нет
+            throw new GameEngineException(GameEngineException.Reason.DRAINING, "Сервер перезапускается, попробуйте позже");
+        }
+        Room room = rooms.get(roomId);
+        if (room == null) {
+            throw new GameEngineException(GameEngineException.Reason.ROOM_NOT_FOUND, "Комната не найдена");
+        }
+        if (playerName.isEmpty()) {
+            throw new GameEngineException(GameEngineException.Reason.INVALID_NAME, "Не указано имя игрока");
+        }
+        String token = sessions.claim(playerName);
+        if (token == null) {
+            throw new GameEngineException(GameEngineException.Reason.NAME_TAKEN, "Игрок с таким именем уже в игре");
+        }
+        Room.Player player = new Room.Player(playerName, token, listener);
+        SessionRegistry.Session session = new SessionRegistry.Session(token, room, player);
+        sessions.register(session);  //Регистрируем до первого состояния, чтобы токен сразу работал
+        try {
+            room.addPlayer(player);
+        } catch (RuntimeException e) {
+            if (room.players().contains(player)) {  //Сесть успел, а упал дальше, например слушатель на первом состоянии: место не держим
+                exit(session);
+            } else {
+                sessions.release(playerName, token);
+            }
+            throw e;
+        }
+        return token;
+    }
+
+    public void reconnect(String sessionToken, PlayerListener listener) { //Возвращаем игрока на его место, старый слушатель закрывается
+        SessionRegistry.Session session = requireSession(sessionToken);
+        if (!session.room().reattachPlayer(session.player(), listener)) {  //Комнату успели закрыть
+            sessions.release(session.player().name, session.token());
+            throw new GameEngineException(GameEngineException.Reason.ROOM_NOT_FOUND, "Комната не найдена");
+        }
+    }
+
+    public void detach(String sessionToken, PlayerListener listener) { //Слушатель отвалился: место держим RECONNECT_GRACE_NANOS, потом игрок выходит
+        SessionRegistry.Session session = sessions.get(sessionToken);
+        if (session != null) {
+            session.room().detachPlayer(session.player(), listener);
+        }
+    }
+
+    public boolean move(String sessionToken, int position) { //true, если ход принят
+        SessionRegistry.Session session = requireSession(sessionToken);
+        return session.room().makeMove(session.player(), position);
+    }
+
+    public void leave(String sessionToken) {
+        exit(requireSession(sessionToken));
+    }
+
+    public void expireDetachedSessions() {  //Кто не переподключился за отведённое время, тот вышел
+        long now = System.nanoTime();
+        sessions.forEach(session -> {
+            if (session.room().isDetachedLongerThan(session.player(), now, RECONNECT_GRACE_NANOS)) {
+                exit(session);
+            }
+        });
+    }
+
+    private SessionRegistry.Session requireSession(String sessionToken) {
+        SessionRegistry.Session session = sessions.get(sessionToken);
+        if (session == null) {
+            throw new GameEngineException(GameEngineException.Reason.SESSION_NOT_FOUND, "Сессия не найдена");
+        }
+        return session;
+    }
+
+    private void exit(SessionRegistry.Session session) {
+        sessions.release(session.player().name, session.token());
+        Room room = session.room();
+        room.removePlayer(session.player());   //Удаляем игрока, если игроков нет или игра закончилась, удаляем и комнату
+        if (room.shouldBeRemoved()) {
+            removeRoom(room.getRoomId(), room);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.engine;
+
+//Почему движок отказал. Сервер по причине выбирает статус gRPC, встроенный код может просто проверить reason
+public class GameEngineException extends RuntimeException {
+    private final Reason reason;
+
+    public GameEngineException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public enum Reason {
+        ROOM_NOT_FOUND,
+        ROOM_FULL,
+        ROOM_LIMIT,          //Больше комнат на сервере не помещается
+        NOT_ALLOWED,         //Турнирная комната, а игрок не из этой пары
+        INVALID_NAME,
+        NAME_TAKEN,
+        SESSION_NOT_FOUND,
+        DRAINING             //Движок останавливается, новых игр не начинаем
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.util.List;
+
+//События для Java Flight Recorder, по ним видно, куда ушло время при скачке задержек.
+//Пока запись не включена, begin/commit ничего не делают, а JIT убирает и сам объект события,
+//поэтому поля заполняем только после isEnabled/shouldCommit
+public final class GameEvents {
+    public static final String MOVE_APPLIED = "com.example.tictactoe.MoveApplied";
+    public static final String STATE_BROADCAST = "com.example.tictactoe.StateBroadcast";
+    public static final String ROOM_LIFECYCLE = "com.example.tictactoe.RoomLifecycle";
+    public static final String ROOM_LOCK_WAIT = "com.example.tictactoe.RoomLockWait";
+    public static final List<String> NAMES = List.of(MOVE_APPLIED, STATE_BROADCAST, ROOM_LIFECYCLE, ROOM_LOCK_WAIT);  //Что включать в записи
+
+    private GameEvents() {
+    }
+
+    @Name(MOVE_APPLIED)
+    @Label("Move Applied")
+    @Description("Ход целиком: проверка, обновление поля и рассылка игрокам под локом комнаты")
+    @Category("TicTacToe")
+    @StackTrace(false)
+    static final class MoveApplied extends Event {
+        @Label("Room ID")
+        String roomId;
+        @Label("Player Count")
+        int playerCount;
+        @Label("Cell")
+        int cell;
+        @Label("Symbol")
+        String symbol;
+        @Label("Accepted")
+        boolean accepted;
+    }
+
+    @Name(STATE_BROADCAST)
+    @Label("State Broadcast")
+    @Description("Рассылка состояния игрокам комнаты, в gRPC сюда входит кодирование protobuf в onNext")
+    @Category("TicTacToe")
+    @StackTrace(false)
+    static final class StateBroadcast extends Event {
+        @Label("Room ID")
+        String roomId;
+        @Label("Player Count")
+        int playerCount;
+        @Label("Recipients")
+        int recipients;
+    }
+
+    @Name(ROOM_LIFECYCLE)
+    @Label("Room Lifecycle")
+    @Description("Смена статуса комнаты")
+    @Category("TicTacToe")
+    @StackTrace(false)
+    static final class RoomLifecycle extends Event {
+        @Label("Room ID")
+        String roomId;
+        @Label("Player Count")
+        int playerCount;
+        @Label("From")
+        String fromStatus;
+        @Label("To")
+        String toStatus;
+    }
+
+    @Name(ROOM_LOCK_WAIT)
+    @Label("Room Lock Wait")
+    @Description("Сколько ждали монитор комнаты при входе и выходе игрока")
+    @Category("TicTacToe")
+    @Threshold("100 us")   //Быстрые захваты не пишем, иначе запись забьётся без пользы
+    static final class RoomLockWait extends Event {
+        @Label("Room ID")
+        String roomId;
+        @Label("Player Count")
+        int playerCount;
+        @Label("Operation")
+        String operation;
+    }
+}
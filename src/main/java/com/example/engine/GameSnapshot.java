@@ -0,0 +1,12 @@
+package com.example.engine;
+
+import java.util.List;
+
+//Что видит игрок после каждого изменения в комнате. Поле хранится кодом позиции, список клеток берётся из BoardTable без копирования.
+//Токен заполнен только в первом состоянии после входа или переподключения, в остальных пустая строка
+public record GameSnapshot(String roomId, int position, String currentPlayer, String status,
+                           int playersCount, String playerSymbol, String sessionToken) {
+    public List<String> board() {
+        return BoardTable.board(position);
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.engine;
+
+//Куда комната шлёт состояние игроку. Это обычный колбэк: сервер заворачивает в него поток gRPC,
+//а встроенный движок может сразу считать ход. Зовётся под локом комнаты, так что долго в нём сидеть нельзя
+public interface PlayerListener {
+    void onState(GameSnapshot state);   //Новое состояние комнаты для этого игрока
+
+    void onClosed();    //Игрока вернули в лобби: он вышел или комнату закрыли
+}
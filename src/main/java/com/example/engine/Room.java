@@ -0,0 +1,363 @@
+package com.example.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+//Одна комната: двое игроков, игра и рассылка состояния. Всё, что меняет комнату, идёт под её монитором
+class Room {
+    private final String roomId;
+    private final String roomName;
+    private final EventBus events;              //Сюда уходят события комнаты, ход их разбора не ждёт
+    private final Set<String> allowedPlayers;   //Кто может сесть в комнату, null - кто угодно
+    private final String owner;                 //Кто создал, по нему движок считает открытые комнаты. null - без лимита
+    private final List<Player> players = new CopyOnWriteArrayList<>();  //Игроки комнаты
+    private final long createdAt = System.nanoTime();  //Чтобы понять, что комнату бросили
+    private Game game;                      //Ситуация в игре
+    private String status = "WAITING";     //Состояние игры
+    private boolean frozen;                 //Состояние уже снято для передачи, больше ничего не меняем
+
+    Room(String roomId, String roomName, EventBus events, Set<String> allowedPlayers, String owner) { //Инициализатор
+        this.roomId = roomId;
+        this.roomName = roomName;
+        this.events = events;
+        this.allowedPlayers = allowedPlayers;
+        this.owner = owner;
+        recordTransition("", status);
+    }
+
+    static Room restore(EngineSnapshot.SavedRoom saved, EventBus events, long now) { //Собираем комнату из снимка прошлого процесса
+        Room room = new Room(saved.roomId(), saved.roomName(), events,
+                saved.allowedPlayers().isEmpty() ? null : Set.copyOf(saved.allowedPlayers()),  //Турнирная комната остаётся закрытой для чужих
+                null);
+        room.setStatus(saved.status());
+        if (saved.board().size() == 9) {
+            room.game = new Game(saved.roomId(), saved.board(), saved.currentPlayer(), saved.gameStatus());
+        }
+        saved.players().forEach(p -> {
+            Player player = new Player(p.playerName(), p.sessionToken(), null);  //Слушателя пока нет, ждём переподключения
+            player.symbol = p.symbol();
+            player.detachedAt = now;
+            room.players.add(player);
+        });
+        return room;
+    }
+
+    public synchronized EngineSnapshot.SavedRoom freezeAndSnapshot() {
+        if (status.equals("CLOSED") || players.isEmpty()) {
+            return null;
+        }
+        frozen = true;
+        List<EngineSnapshot.SavedPlayer> saved = new ArrayList<>(players.size());
+        players.forEach(p -> saved.add(new EngineSnapshot.SavedPlayer(p.name, p.symbol, p.token)));
+        return new EngineSnapshot.SavedRoom(roomId, roomName, status,
+                game != null ? BoardTable.board(game.getPosition()) : List.of(),
+                game != null ? game.getCurrentPlayer() : "",
+                game != null ? game.getStatus() : "",
+                saved,
+                allowedPlayers != null ? List.copyOf(allowedPlayers) : List.of());
+    }
+
+    public void addPlayer(Player newPlayer) {  //Если сесть нельзя, бросает GameEngineException
+        GameEvents.RoomLockWait lockWait = new GameEvents.RoomLockWait();
+        lockWait.begin();
+        synchronized (this) {
+            commitLockWait(lockWait, "addPlayer");
+            addPlayerLocked(newPlayer);
+        }
+    }
+
+    private void addPlayerLocked(Player newPlayer) {
+        if (status.equals("CLOSED")) {   //Комнату уже убрали из мапы, пока игрок к ней шёл
+            throw new GameEngineException(GameEngineException.Reason.ROOM_NOT_FOUND, "Комната не найдена");
+        }
+        if (frozen) {
+            throw new GameEngineException(GameEngineException.Reason.DRAINING, "Сервер перезапускается, попробуйте позже");
+        }
+        if (allowedPlayers != null && !allowedPlayers.contains(newPlayer.name)) {
+            throw new GameEngineException(GameEngineException.Reason.NOT_ALLOWED, "Это комната турнирного матча");
+        }
+        if (players.size() >= 2) {
+            throw new GameEngineException(GameEngineException.Reason.ROOM_FULL, "Комната заполнена");
+        }
+        String symbol;
+        if (players.isEmpty()) //Если игрок только зашёл, то он всегда X
+        {
+            symbol = "X";
+        } else {                                                //Если игрок второй, то нужно дать ему символ противоположный игроку в комнате
+            symbol = Objects.equals(players.getFirst().symbol, "O") ? "X" : "O";
+        }
+        newPlayer.symbol = symbol;
+        players.add(newPlayer); //Добавляем и грока и отправляем клиенту инфу о состоянии комнаты
+        sendInitialState(newPlayer);
+        events.publishPlayerJoined(roomId, newPlayer.name, symbol, players.size());
+
+        if (players.size() == 2) { //Если комната полна, начинаем игру
+            startGame();
+        }
+    }
+
+    public synchronized boolean reattachPlayer(Player player, PlayerListener listener) { //Игрок вернулся со своим токеном
+        if (!players.contains(player)) {
+            return false;
+        }
+        PlayerListener previous = player.listener;
+        player.listener = listener;
+        player.detachedAt = 0;
+        sendInitialState(player);
+        if (previous != null && previous != listener) {  //Старый слушатель больше не нужен, клиент теперь слушает новый
+            safelyClose(previous);
+        }
+        return true;
+    }
+
+    public synchronized void detachPlayer(Player player, PlayerListener listener) {
+        if (player.listener == listener) {  //Если игрок уже переподключился, нового слушателя не трогаем
+            player.listener = null;
+            player.detachedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized boolean isDetachedLongerThan(Player player, long now, long graceNanos) {
+        return player.listener == null && now - player.detachedAt > graceNanos;
+    }
+
+    private void sendInitialState(Player player) { //Первое состояние несёт токен, с ним клиент дальше ходит и переподключается
+        safelySend(player, snapshotFor(player, player.token));
+    }
+
+    private GameSnapshot snapshotFor(Player player, String token) {
+        return new GameSnapshot(roomId, getCurrentPosition(), game != null ? game.getCurrentPlayer() : "",
+                status, players.size(), player.symbol, token);
+    }
+
+    private void setStatus(String next) { //Все смены статуса идут сюда, чтобы их было видно в записи JFR
+        String previous = status;
+        status = next;
+        recordTransition(previous, next);
+    }
+
+    private void recordTransition(String from, String to) {
+        GameEvents.RoomLifecycle event = new GameEvents.RoomLifecycle();
+        if (event.isEnabled()) {
+            event.roomId = roomId;
+            event.playerCount = players.size();
+            event.fromStatus = from;
+            event.toStatus = to;
+            event.commit();
+        }
+    }
+
+    private int getCurrentPosition() { //Код позиции на поле, по нему берём готовое поле из таблицы
+        return game != null ? game.getPosition() : BoardTable.EMPTY;
+    }
+
+    private void startGame() {  //Запускает новую игру и обновляет у клиентов
+        this.game = new Game(roomId);
+        setStatus("IN_PROGRESS");
+        notifyPlayers();
+    }
+
+    public synchronized boolean makeMove(Player player, int position) { //Фиксирует ход у себя. Под локом, чтобы символ не поменялся посреди хода
+        GameEvents.MoveApplied event = new GameEvents.MoveApplied();
+        event.begin();
+        boolean success = !frozen && game != null && players.contains(player) && game.makeMove(player.symbol, position);
+        if (success) {
+            events.publishMoveApplied(roomId, player.name, player.symbol, position, game.getStatus(), players.size());
+            notifyPlayers();  //Если ход успешен, тообновляем пользователей и проверяем, что игра всё ещё идёт
+            if (!game.getStatus().equals("IN_PROGRESS")) {
+                setStatus(game.getStatus());
+                notifyPlayers();
+                reportResult(status);
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.roomId = roomId;
+            event.playerCount = players.size();
+            event.cell = position;
+            event.symbol = player.symbol;
+            event.accepted = success;
+            event.commit();
+        }
+        return success;
+    }
+
+    private void notifyPlayers() {         //отправляем игрокам инфу о ситуации на поле и статус игры
+        GameEvents.StateBroadcast event = new GameEvents.StateBroadcast();
+        event.begin();
+        broadcastState();
+        event.end();
+        if (event.shouldCommit()) {
+            event.roomId = roomId;
+            event.playerCount = players.size();
+            event.recipients = (int) players.stream().filter(p -> p.listener != null).count();
+            event.commit();
+        }
+    }
+
+    private void broadcastState() {
+        players.forEach(p -> {
+            if (p.listener == null) {   //Игрок отвалился и ещё не вернулся
+                return;
+            }
+            safelySend(p, snapshotFor(p, ""));
+        });
+    }
+
+    //Слушатель - чужой код, и его ошибка не должна оборвать ход на полпути: статус и результат игры всё равно должны записаться.
+    //Сломавшийся слушатель считаем отвалившимся: место держим, как при обрыве, игрок может переподключиться
+    private void safelySend(Player player, GameSnapshot snapshot) {
+        try {
+            player.listener.onState(snapshot);
+        } catch (RuntimeException e) {
+            System.out.println("Не удалось отправить состояние игроку " + player.name + ": " + e.getMessage());
+            player.listener = null;
+            player.detachedAt = System.nanoTime();
+        }
+    }
+
+    public void removePlayer(Player player) {
+        GameEvents.RoomLockWait lockWait = new GameEvents.RoomLockWait();
+        lockWait.begin();
+        synchronized (this) {
+            commitLockWait(lockWait, "removePlayer");
+            removePlayerLocked(player);
+        }
+    }
+
+    private void commitLockWait(GameEvents.RoomLockWait lockWait, String operation) { //Зовётся сразу после входа в монитор, так что событие меряет только ожидание
+        lockWait.end();
+        if (lockWait.shouldCommit()) {
+            lockWait.roomId = roomId;
+            lockWait.playerCount = players.size();
+            lockWait.operation = operation;
+            lockWait.commit();
+        }
+    }
+
+    private void removePlayerLocked(Player player) {   //Если такой игрок есть, то удаляем
+        if (!players.contains(player)) {
+            return;
+        }
+        boolean forfeit = status.equals("IN_PROGRESS");
+        if (forfeit) {  //Ушёл посреди игры - засчитываем поражение. До удаления, пока за столом оба и известны имена X и O
+            reportResult((player.symbol.equals("X") ? "O" : "X") + "_WON");
+        }
+        players.remove(player);
+        if (player.listener != null) {
+            safelyClose(player.listener);
+        }
+
+        if (players.isEmpty()) {  //Если игроков не осталось, удаляем комнату. Иначе оставшемуся игроку обновляем комнату и ресетим игру
+            resetRoom();
+        } else if (forfeit) {
+            setStatus("ABANDONED");
+            notifyPlayers();
+            resetGame();
+        }
+    }
+
+    private void reportResult(String result) {  //Результат уходит в шину, рейтинг и турниры разберут его в своих потоках
+        String xPlayer = null;
+        String oPlayer = null;
+        for (Player p : players) {
+            if (p.symbol.equals("X")) {
+                xPlayer = p.name;
+            } else {
+                oPlayer = p.name;
+            }
+        }
+        if (xPlayer != null && oPlayer != null) {
+            events.publishGameFinished(roomId, xPlayer, oPlayer, result, players.size());
+        }
+    }
+
+    private void safelyClose(PlayerListener listener) {    //Безопасно перекидываеи клиента на экран лобби
+        try {
+            listener.onClosed();
+        } catch (RuntimeException e) {  //Поток мог уже закрыться вместе с соединением
+            System.out.println("Не удалось закрыть поток игрока: " + e.getMessage());
+        }
+    }
+
+    private void resetRoom() { //нулл игра и она завкрыта
+        if (status.equals("CLOSED")) {   //Закрывают и по последнему игроку, и из турнира, событие нужно одно
+            return;
+        }
+        this.game = null;
+        setStatus("CLOSED");
+        events.publishRoomClosed(roomId);
+    }
+
+    private void resetGame() {          //Пересоздаём игру
+        this.game = new Game(roomId);
+        players.getFirst().symbol = "X";   //Оставшийся игрок всегда будет крестиком
+        setStatus("WAITING");
+        notifyPlayers();        //Обновим ему инфу
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public int getPlayersCount() {
+        return players.size();
+    }
+
+    public String getRoomName() {
+        return roomName;
+    }
+
+    String getOwner() {
+        return owner;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public synchronized boolean closeIfStale(long now, long ttlNanos) {  //Закрываем под локом, чтобы никто не успел зайти между проверкой и удалением
+        if (isPublic() && players.isEmpty() && now - createdAt > ttlNanos) {  //Турнирные комнаты закрывает турнир
+            resetRoom();
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void close() {
+        resetRoom();
+    }
+
+    public boolean isPublic() {
+        return allowedPlayers == null;
+    }
+
+    List<Player> players() {   //Сам список, движок по нему выпускает игроков при закрытии и восстановлении
+        return players;
+    }
+
+    public List<String> getPlayerNames() {
+        return players.stream().map(p -> p.name).toList();
+    }
+
+    public boolean shouldBeRemoved() {    //Проверяет комнату на удаление
+        return status.equals("CLOSED") || players.isEmpty();
+    }
+
+    static class Player {       //Инфа о игроке, меняется только под локом комнаты
+        final String name;
+        final String token;         //Токен сессии, по нему игрок ходит и переподключается
+        String symbol;
+        PlayerListener listener;    //Через него игрок получает состояние игры, null пока игрок отключён
+        long detachedAt;            //Когда отвалился поток
+
+        Player(String name, String token, PlayerListener listener) {
+            this.name = name;
+            this.token = token;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.engine;
+
+//Строка списка комнат в лобби
+public record RoomSummary(String roomId, String roomName, int playersCount, String status) {
+}
@@ -0,0 +1,54 @@
+package com.example.engine;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+//Кто сейчас играет на сервере. По токену сразу находим игрока, его комнату и место, без перебора по именам.
+//Одно имя - одна сессия, поэтому два клиента с одинаковым именем не путаются и один игрок не сидит в нескольких комнатах
+class SessionRegistry {
+    private final ConcurrentMap<String, Session> byToken = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> tokenByPlayer = new ConcurrentHashMap<>();  //Имя -> токен, держит имя занятым
+    private final SecureRandom random = new SecureRandom();
+
+    String claim(String playerName) {   //Занимаем имя. null, если под этим именем уже кто-то играет
+        String token = newToken();
+        return tokenByPlayer.putIfAbsent(playerName, token) == null ? token : null;
+    }
+
+    void register(Session session) {
+        byToken.put(session.token(), session);
+    }
+
+    boolean restore(Session session) {  //Сессия пришла от прошлого процесса вместе с токеном, новый не выдаём
+        if (tokenByPlayer.putIfAbsent(session.player().name, session.token()) != null) {
+            return false;
+        }
+        register(session);
+        return true;
+    }
+
+    Session get(String token) {
+        return token == null || token.isEmpty() ? null : byToken.get(token);
+    }
+
+    void release(String playerName, String token) {  //Освобождаем имя и токен, после этого токен больше не работает
+        byToken.remove(token);
+        tokenByPlayer.remove(playerName, token);
+    }
+
+    void forEach(Consumer<Session> action) {
+        byToken.values().forEach(action);
+    }
+
+    private String newToken() {  //Случайные 128 бит, по токену ничего нельзя понять про игрока
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    record Session(String token, Room room, Room.Player player) {
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.engine;
+
+//Как поток подписчика ждёт новые события. Чем быстрее реакция, тем больше жжём процессор
+public enum WaitStrategy {
+    BUSY_SPIN,      //Крутимся на одном ядре без остановки, минимальная задержка
+    YIELDING,       //Немного крутимся, потом отдаём квант другим потокам
+    SLEEPING,       //Крутимся, уступаем, потом засыпаем на микросекунды
+    BLOCKING        //Спим на условии, продюсер будит, только если кто-то правда ждёт. Для сервера по умолчанию
+}